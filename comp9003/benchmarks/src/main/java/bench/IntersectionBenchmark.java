@@ -0,0 +1,74 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import exception.InvalidIntersectionException;
+import network.IntersectionEventLog;
+import network.IntersectionNetwork;
+import network.MoveOutcome;
+import network.RoadLayout;
+
+/**
+ * Per-call cost of IntersectionNetwork.moveThrough on a long road.
+ * lane=0 always finds an intersection; lane=1 (the middle lane) hits the missing
+ * intersection path on every other call, which is where the exception cost shows.
+ * A tracker that reaches the end of the road is replaced, which is rare enough not to matter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntersectionBenchmark {
+
+    private static final int INTERSECTIONS = 1 << 20;
+
+    @Param({"0", "1"})
+    public int lane;
+
+    private RoadLayout layout;
+    private IntersectionNetwork tracker;
+
+    @Setup
+    public void setup() {
+        layout = RoadLayout.standard(3, INTERSECTIONS);
+        tracker = newTracker();
+    }
+
+    @Benchmark
+    public boolean moveThrough() {
+        if (tracker.getCurrentIntersectionIndex() >= INTERSECTIONS) {
+            tracker = newTracker();
+        }
+        try {
+            tracker.moveThrough();
+            return true;
+        } catch (InvalidIntersectionException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public MoveOutcome tryMoveThrough() {
+        if (tracker.getCurrentIntersectionIndex() >= INTERSECTIONS) {
+            tracker = newTracker();
+        }
+        return tracker.tryMoveThrough();
+    }
+
+    private IntersectionNetwork newTracker() {
+        return new IntersectionNetwork(layout, layout.alternatingPattern(), "bench", lane,
+                new IntersectionEventLog(1024, IntersectionEventLog.Retention.KEEP_LATEST));
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import exception.InvalidSignalIDException;
+import signal.SignalRegistry;
+import signal.SignalScheduler;
+import signal.TrafficSignal;
+
+/**
+ * Cost of TrafficSignal.signal and of advancing a SignalScheduler by one 5-second step.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SignalBenchmark {
+
+    @Param({"100", "100000"})
+    public int signals;
+
+    private TrafficSignal single;
+    private SignalScheduler scheduler;
+
+    @Setup
+    public void setup() throws InvalidSignalIDException {
+        SignalRegistry registry = new SignalRegistry();
+        single = new TrafficSignal(registry, "bench");
+        scheduler = new SignalScheduler(signals);
+        for (int i = 0; i < signals; i++) {
+            scheduler.schedule(new TrafficSignal(registry, "s" + i));
+        }
+    }
+
+    @Benchmark
+    public void signal() {
+        single.signal();
+    }
+
+    @Benchmark
+    public int schedulerStep() {
+        return scheduler.advanceBy(5.0);
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import exception.InvalidSignalIDException;
+import report.NullReporter;
+import signal.SignalRegistry;
+import signal.SignalScheduler;
+import signal.TrafficSignal;
+import simulation.TickEngine;
+import vehicle.VehicleStore;
+
+/**
+ * End-to-end ticks per second: one operation is one step of the simulation loop that
+ * Main.runSimulation drives, over fleets from 10 to 10 million vehicles.
+ * Vehicle output goes to a NullReporter so the numbers measure the simulation, not the console.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class TickBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000", "10000000"})
+    public int fleetSize;
+
+    @Param({"car", "mixed"})
+    public String mix;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private VehicleStore vehicles;
+    private SignalScheduler signals;
+    private TickEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() throws InvalidSignalIDException {
+        vehicles = new VehicleStore(fleetSize);
+        vehicles.setReporter(NullReporter.INSTANCE);
+        for (int i = 0; i < fleetSize; i++) {
+            byte type = mix.equals("car") ? VehicleStore.TYPE_CAR : (byte) (i % 3);
+            vehicles.add(type, "v" + i);
+        }
+        SignalRegistry registry = new SignalRegistry();
+        signals = new SignalScheduler();
+        for (int i = 0; i < Math.max(1, fleetSize / 100); i++) {
+            signals.schedule(new TrafficSignal(registry, "s" + i));
+        }
+        engine = TickEngine.create(workers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public int tick() {
+        return engine.step(vehicles, signals);
+    }
+}
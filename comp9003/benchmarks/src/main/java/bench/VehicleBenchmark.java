@@ -0,0 +1,70 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import exception.SimulationException;
+import report.NullReporter;
+import vehicle.Bus;
+import vehicle.Car;
+import vehicle.Truck;
+import vehicle.Vehicle;
+import vehicle.VehicleStore;
+
+/**
+ * Per-call cost of Vehicle.move and Vehicle.calculateVelocity through vehicle handles.
+ * With mix=mixed the handles cycle through Car, Bus and Truck, so the getSpeed call site
+ * sees three receiver types and goes megamorphic; mix=car keeps it monomorphic.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VehicleBenchmark {
+
+    private static final int HANDLES = 1024;
+
+    @Param({"car", "mixed"})
+    public String mix;
+
+    private Vehicle[] handles;
+    private int next;
+
+    @Setup
+    public void setup() {
+        VehicleStore store = new VehicleStore(HANDLES);
+        store.setReporter(NullReporter.INSTANCE);
+        handles = new Vehicle[HANDLES];
+        for (int i = 0; i < HANDLES; i++) {
+            String id = "v" + i;
+            if (mix.equals("car") || i % 3 == 0) {
+                handles[i] = new Car(store, id);
+            } else if (i % 3 == 1) {
+                handles[i] = new Bus(store, id);
+            } else {
+                handles[i] = new Truck(store, id);
+            }
+        }
+    }
+
+    @Benchmark
+    public void move() throws SimulationException {
+        handles[next++ & (HANDLES - 1)].move();
+    }
+
+    @Benchmark
+    public double calculateVelocity() {
+        return handles[next++ & (HANDLES - 1)].calculateVelocity();
+    }
+}
@@ -1,17 +1,63 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import javax.management.JMException;
 
 import exception.InvalidSignalIDException;
 import exception.InvalidTimerException;
 import exception.SimulationException;
-import vehicle.Vehicle;
-import vehicle.Car;   // it can be Bus or Truck
+import vehicle.FleetManager;
+import vehicle.VehicleStore;
+import signal.SignalRegistry;
+import signal.SignalScheduler;
 import signal.TrafficSignal;
+import metrics.SimulationMetrics;
+import report.NullReporter;
+import report.SimulationReporter;
+import simulation.FleetTask;
+import simulation.LiveCommandServer;
+import simulation.LiveCommands;
+import simulation.LiveSimulation;
+import simulation.MeteredTickEngine;
+import simulation.MultiRateScheduler;
+import simulation.PartitionedRunner;
+import simulation.ScenarioRunner;
+import simulation.SignalTask;
+import simulation.SweepRunner;
+import simulation.TickEngine;
+import partition.Transport;
+import report.TextReporter;
+import trace.TraceReader;
 
 public class Main {
     public static void main(String[] args) throws SimulationException, InvalidSignalIDException {
+        if (args.length > 0) {
+            runHeadless(args);
+            return;
+        }
         Scanner sc = new Scanner(System.in);
-        List<Vehicle> vehicles = new ArrayList<>();
+        VehicleStore vehicles = new VehicleStore();
+        FleetManager fleet = new FleetManager(vehicles); // O(1) removal and lookup by ID
         List<TrafficSignal> signals = new ArrayList<>();
+        SignalRegistry registry = new SignalRegistry();
+        SignalScheduler scheduler = new SignalScheduler();
+        // Worker threads for the tick engine, e.g. -Dsim.workers=16; 1 runs sequentially
+        TickEngine engine = createEngine("menu");
+        // Simulation output sink, e.g. -Dsim.report=none or -Dsim.report=csv:run.csv
+        SimulationReporter reporter = createReporter("text");
+        // Menu options are commands on the model. With -Dsim.live=<speed> (1 for real time,
+        // 0 as fast as possible) it runs on its own thread meanwhile and also takes commands
+        // from -Dsim.live.commands=<file> and from loopback port -Dsim.live.port=<port>
+        LiveSimulation model = new LiveSimulation(fleet, signals, registry, scheduler, engine);
+        String liveSpeed = System.getProperty("sim.live");
+        boolean live = liveSpeed != null;
+        // A live run's moves are dropped rather than printed over the menu; option 5 shows its state
+        vehicles.setReporter(live ? NullReporter.INSTANCE : reporter);
+        LiveCommandServer server = live ? startLive(model, liveSpeed) : null;
 
         while (true) {
             System.out.println("\n=== Simulation Main Menu ===");
@@ -19,7 +65,7 @@ public class Main {
             System.out.println("2. List / Remove Vehicles");
             System.out.println("3. Add Traffic Signal");
             System.out.println("4. List / Set Traffic Signal Timers");
-            System.out.println("5. Run 5-Minute Simulation");
+            System.out.println(live ? "5. Show Live Simulation State" : "5. Run 5-Minute Simulation");
             System.out.println("0. Exit");
             System.out.print("Select an option: ");
 
@@ -36,30 +82,27 @@ public class Main {
                 case 1:
                     System.out.print("Enter vehicle ID: ");
                     String vid = sc.nextLine().trim();
-                    vehicles.add(new Car(vid));
-                    System.out.println("Vehicle \"" + vid + "\" added.");
+                    // it can be TYPE_BUS or TYPE_TRUCK
+                    System.out.println(model.call(() -> model.addVehicle(VehicleStore.TYPE_CAR, vid)));
                     break;
 
                 case 2:
-                    if (vehicles.isEmpty()) {
+                    List<String> vehicleIDs = new ArrayList<>(); // as listed; a live run may change the list meanwhile
+                    String vehicleList = model.call(() -> listVehicles(vehicles, vehicleIDs));
+                    if (vehicleIDs.isEmpty()) {
                         System.out.println("No vehicles available. Use option 1 to add a vehicle first.");
                         break;
                     }
-                    System.out.println("Current Vehicles:");
-                    for (int i = 0; i < vehicles.size(); i++) {
-                        Vehicle v = vehicles.get(i);
-                        System.out.printf("[%d] ID=%s, Position=%.2fm, Lane=%d%n",
-                                i, v.getVehicleID(), v.getCurrentPosition(), v.getCurrentLane());
-                    }
+                    System.out.print(vehicleList);
                     System.out.print("Enter index to remove (-1 to cancel): ");
                     String remLine = sc.nextLine().trim();
                     if (remLine.equals("-1")) {
                         System.out.println("Removal cancelled.");
                     } else if (remLine.matches("0|[1-9]\\d*")) {
                         int remIdx = Integer.parseInt(remLine);
-                        if (remIdx < vehicles.size()) {
-                            vehicles.remove(remIdx);
-                            System.out.println("Vehicle removed.");
+                        if (remIdx < vehicleIDs.size()) {
+                            // the last vehicle takes its place in the list
+                            System.out.println(model.call(() -> model.removeVehicle(vehicleIDs.get(remIdx))));
                         } else {
                             System.out.println("Index out of range.");
                         }
@@ -71,21 +114,17 @@ public class Main {
                 case 3:
                     System.out.print("Enter traffic signal ID: ");
                     String sid = sc.nextLine().trim();
-                    signals.add(new TrafficSignal(sid));
-                    System.out.println("Traffic signal \"" + sid + "\" added.");
+                    System.out.println(model.call(() -> model.addSignal(sid)));
                     break;
 
                 case 4:
-                    if (signals.isEmpty()) {
+                    List<String> signalIDs = new ArrayList<>();
+                    String signalList = model.call(() -> listSignals(signals, signalIDs));
+                    if (signalIDs.isEmpty()) {
                         System.out.println("No traffic signals yet. Please add one first.");
                         break;
                     }
-                    System.out.println("Current Traffic Signals:");
-                    for (int i = 0; i < signals.size(); i++) {
-                        TrafficSignal s = signals.get(i);
-                        System.out.printf("[%d] ID=%s, State=%s, Remaining=%ds%n",
-                                i, s.getSignalID(), s.getCurrentState(), s.getCurrentTimer());
-                    }
+                    System.out.print(signalList);
                     System.out.print("Select index to set timers (-1 to cancel): ");
                     String idxLine = sc.nextLine().trim();
                     if (idxLine.equals("-1")) {
@@ -97,7 +136,7 @@ public class Main {
                         break;
                     }
                     int idx = Integer.parseInt(idxLine);
-                    if (idx < 0 || idx >= signals.size()) {
+                    if (idx < 0 || idx >= signalIDs.size()) {
                         System.out.println("Index out of range.");
                         break;
                     }
@@ -109,9 +148,8 @@ public class Main {
                             int r = Integer.parseInt(parts[0]);
                             int y = Integer.parseInt(parts[1]);
                             int g = Integer.parseInt(parts[2]);
-                            signals.get(idx).setTimers(r, y, g);
-                            System.out.println("Timers updated.");
-                        } catch (NumberFormatException | InvalidTimerException ex) {
+                            System.out.println(model.call(() -> setTimers(model, signalIDs.get(idx), r, y, g)));
+                        } catch (NumberFormatException ex) {
                             System.out.println("Invalid numbers. Please enter three integers.");
                         }
                     } else {
@@ -120,12 +158,27 @@ public class Main {
                     break;
 
                 case 5:
-                    runSimulation(vehicles, signals);
+                    if (live) {
+                        model.call(() -> reportStates(String.format("Live Simulation at %.1f s", model.getTime()),
+                                vehicles, signals, engine, reporter));
+                    } else {
+                        runSimulation(vehicles, signals, scheduler, engine, reporter);
+                    }
                     break;
 
                 case 0:
                     System.out.println("Exiting. Goodbye!");
                     sc.close();
+                    if (server != null) {
+                        try {
+                            server.close();
+                        } catch (IOException e) {
+                            // already closed
+                        }
+                    }
+                    model.close();
+                    engine.close();
+                    reporter.close();
                     return;
 
                 default:
@@ -134,36 +187,241 @@ public class Main {
         }
     }
 
-    private static void runSimulation(List<Vehicle> vehicles, List<TrafficSignal> signals) throws SimulationException, InvalidSignalIDException {
-        final int totalSteps = 300 / 5;  // 60 steps
-        for (int step = 1; step <= totalSteps; step++) {
-            for (Vehicle v : vehicles) {
-                v.move();
+    /**
+     * Batch mode: java Main <scenario-file|-> [results.csv]
+     *         or: java Main --resume <checkpoint> [results.csv]
+     *         or: java Main --sweep <sweep-file> [results.csv]
+     *         or: java Main --partition <boundary,boundary,...> <scenario-file|-> [results.csv]
+     *         or: java Main --replay <step> <trace-file> [state.txt]
+     * Runs the scenario (or continues a checkpointed run, or runs a signal timer sweep, or
+     * runs the scenario with the road split into segments at the given positions, each
+     * owned by a worker started by the transport named in -Dsim.transport, socket or local)
+     * without the menu and streams results as CSV to the results file, or to standard
+     * output if none is given. --replay instead prints every vehicle and signal as they
+     * were at a step of a traced run.
+     */
+    private static void runHeadless(String[] args) throws SimulationException {
+        boolean resume = args[0].equals("--resume");
+        boolean sweep = args[0].equals("--sweep");
+        boolean partition = args[0].equals("--partition");
+        boolean replay = args[0].equals("--replay");
+        int first = partition || replay ? 2 : resume || sweep ? 1 : 0;
+        if (args.length <= first || args.length > first + 2) {
+            System.err.println("Usage: java Main <scenario-file|-> [results.csv]");
+            System.err.println("       java Main --resume <checkpoint> [results.csv]");
+            System.err.println("       java Main --sweep <sweep-file> [results.csv]");
+            System.err.println("       java Main --partition <boundary,boundary,...> <scenario-file|-> [results.csv]");
+            System.err.println("       java Main --replay <step> <trace-file> [state.txt]");
+            System.exit(2);
+        }
+        String input = args[first];
+        try (TickEngine engine = createEngine("batch");
+             SimulationReporter reporter = createReporter("none");
+             PrintStream out = args.length == first + 2 ? new PrintStream(args[first + 1], "UTF-8") : null) {
+            PrintStream results = out != null ? out : System.out;
+            if (replay) {
+                replay(input, parseStep(args[1]), results);
+            } else if (sweep) {
+                SweepRunner.run(input, results);
+            } else if (partition) {
+                PartitionedRunner.run(input, parseBoundaries(args[1]), createTransport(), results);
+            } else if (resume) {
+                ScenarioRunner.resume(input, results, engine, reporter);
+            } else {
+                ScenarioRunner.run(input, results, engine, reporter);
+            }
+            if (engine instanceof MeteredTickEngine) {
+                for (String line : ((MeteredTickEngine) engine).getMetrics().summary()) {
+                    System.err.println(line);
+                }
             }
-            for (TrafficSignal ts : signals) {
-                ts.signal();
+        } catch (IOException e) {
+            throw new SimulationException("Cannot run scenario: " + e.getMessage());
+        }
+    }
+
+    private static Transport createTransport() throws SimulationException {
+        try {
+            return Transport.create(System.getProperty("sim.transport", "socket"));
+        } catch (IllegalArgumentException e) {
+            throw new SimulationException(e.getMessage());
+        }
+    }
+
+    private static void replay(String traceFile, long step, PrintStream out) throws IOException, SimulationException {
+        try (TraceReader reader = new TraceReader(Path.of(traceFile))) {
+            if (!reader.isIndexed()) {
+                System.err.println("Trace " + traceFile + " was not closed properly; replaying up to its last complete frame");
             }
-            if (step % 12 == 0) {
-                System.out.println("---- One Minute Completed! ----");
+            TextReporter reporter = new TextReporter(out, TextReporter.DEFAULT_BATCH);
+            reader.stateAt(step).report(reporter);
+        } catch (IllegalArgumentException e) {
+            throw new SimulationException(e.getMessage());
+        }
+    }
+
+    private static long parseStep(String step) throws SimulationException {
+        long s;
+        try {
+            s = Long.parseLong(step);
+        } catch (NumberFormatException e) {
+            s = -1;
+        }
+        if (s < 0) {
+            throw new SimulationException("Invalid step \"" + step + "\"");
+        }
+        return s;
+    }
+
+    private static double[] parseBoundaries(String list) throws SimulationException {
+        String[] parts = list.split(",");
+        double[] boundaries = new double[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                boundaries[i] = Double.parseDouble(parts[i].trim());
             }
+        } catch (NumberFormatException e) {
+            throw new SimulationException("Invalid segment boundaries \"" + list + "\"");
+        }
+        return boundaries;
+    }
+
+    // Engine with -Dsim.workers threads; with -Dsim.metrics=true it is metered and visible over JMX
+    private static TickEngine createEngine(String name) throws SimulationException {
+        TickEngine engine = TickEngine.create(Integer.getInteger("sim.workers", 1));
+        if (!Boolean.getBoolean("sim.metrics")) {
+            return engine;
         }
+        SimulationMetrics metrics = new SimulationMetrics();
+        try {
+            metrics.register(name);
+        } catch (JMException e) {
+            throw new SimulationException("Cannot register metrics: " + e.getMessage());
+        }
+        return new MeteredTickEngine(engine, metrics);
+    }
 
-        System.out.println("\n=== Simulation Finished: Vehicle States ===");
+    // Reporter named by the sim.report system property, or by defaultSpec if it isn't set
+    private static SimulationReporter createReporter(String defaultSpec) throws SimulationException {
+        String spec = System.getProperty("sim.report", defaultSpec);
+        try {
+            return SimulationReporter.fromSpec(spec);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SimulationException("Cannot create reporter \"" + spec + "\": " + e.getMessage());
+        }
+    }
+
+    private static void runSimulation(VehicleStore vehicles, List<TrafficSignal> signals, SignalScheduler scheduler,
+                                      TickEngine engine, SimulationReporter reporter) throws SimulationException, InvalidSignalIDException {
+        // vehicles and signals each run at their own rate, synchronized once a minute
+        MultiRateScheduler clock = new MultiRateScheduler(scheduler.getTime());
+        SignalTask signalTask = new SignalTask(scheduler, engine, vehicles.getMotionModel() != null);
+        clock.add("signals", signalTask, signalTask.nextDue());
+        FleetTask fleet = new FleetTask(vehicles, engine, clock.getTime());
+        clock.add("vehicles", fleet, fleet.nextDue());
+        for (int minute = 1; minute <= 5; minute++) {
+            clock.advanceTo(clock.getTime() + 60_000);
+            reporter.message("---- One Minute Completed! ----");
+        }
+        reportStates("Simulation Finished", vehicles, signals, engine, reporter);
+    }
+
+    // Every vehicle and signal as they are now, under the given heading
+    private static Void reportStates(String heading, VehicleStore vehicles, List<TrafficSignal> signals,
+                                     TickEngine engine, SimulationReporter reporter) {
+        reporter.message("");
+        reporter.message("=== " + heading + ": Vehicle States ===");
         if (vehicles.isEmpty()) {
-            System.out.println("No vehicles were added to the simulation.");
+            reporter.message("No vehicles were added to the simulation.");
         } else {
-            for (Vehicle v : vehicles) {
-                v.showTrafficState();
+            for (int i = 0; i < vehicles.size(); i++) {
+                vehicles.showTrafficState(i, reporter);
             }
         }
-        System.out.println("=== Simulation Finished: Traffic Signal States ===");
+        reporter.message("=== " + heading + ": Traffic Signal States ===");
         if (signals.isEmpty()) {
-            System.out.println("No traffic signals were added to the simulation.");
+            reporter.message("No traffic signals were added to the simulation.");
         } else {
             for (TrafficSignal s : signals) {
-                System.out.printf("Signal [%s]: State=%s, Remaining=%ds%n",
-                        s.getSignalID(), s.getCurrentState(), s.getCurrentTimer());
+                reporter.message(String.format("Signal [%s]: State=%s, Remaining=%ds",
+                        s.getSignalID(), s.getCurrentState(), s.getCurrentTimer()));
+            }
+        }
+        if (engine instanceof MeteredTickEngine) {
+            ((MeteredTickEngine) engine).getMetrics().report(reporter);
+        }
+        reporter.flush();
+        return null;
+    }
+
+    // The menu's vehicle list; fills ids with the listed vehicle IDs
+    private static String listVehicles(VehicleStore vehicles, List<String> ids) {
+        StringBuilder list = new StringBuilder(String.format("Current Vehicles:%n"));
+        for (int i = 0; i < vehicles.size(); i++) {
+            ids.add(vehicles.getVehicleID(i));
+            list.append(String.format("[%d] ID=%s, Position=%.2fm, Lane=%d%n",
+                    i, vehicles.getVehicleID(i), vehicles.getCurrentPosition(i), vehicles.getCurrentLane(i)));
+        }
+        return list.toString();
+    }
+
+    // The menu's signal list; fills ids with the listed signal IDs
+    private static String listSignals(List<TrafficSignal> signals, List<String> ids) {
+        StringBuilder list = new StringBuilder(String.format("Current Traffic Signals:%n"));
+        for (int i = 0; i < signals.size(); i++) {
+            TrafficSignal s = signals.get(i);
+            ids.add(s.getSignalID());
+            list.append(String.format("[%d] ID=%s, State=%s, Remaining=%ds%n",
+                    i, s.getSignalID(), s.getCurrentState(), s.getCurrentTimer()));
+        }
+        return list.toString();
+    }
+
+    private static String setTimers(LiveSimulation model, String signalID, int red, int yellow, int green)
+            throws SimulationException {
+        try {
+            model.setTimers(signalID, red, yellow, green);
+            return "Timers updated.";
+        } catch (InvalidTimerException e) {
+            return "Invalid numbers. Please enter three integers.";
+        }
+    }
+
+    // Starts the live run and its command sources
+    private static LiveCommandServer startLive(LiveSimulation model, String speed) throws SimulationException {
+        try {
+            model.start(Double.parseDouble(speed));
+        } catch (IllegalArgumentException e) {
+            throw new SimulationException("Invalid live speed \"" + speed + "\"");
+        }
+        String commands = System.getProperty("sim.live.commands");
+        if (commands != null) {
+            Reader in;
+            try {
+                in = Files.newBufferedReader(Path.of(commands), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new SimulationException("Cannot read commands " + commands + ": " + e.getMessage());
             }
+            Thread feeder = new Thread(() -> {
+                try (in) {
+                    LiveCommands.feed(in, model, System.out);
+                } catch (IOException e) {
+                    System.err.println("Cannot read commands " + commands + ": " + e.getMessage());
+                }
+            }, "live-commands-file");
+            feeder.setDaemon(true);
+            feeder.start();
+        }
+        Integer port = Integer.getInteger("sim.live.port");
+        if (port == null) {
+            return null;
+        }
+        try {
+            LiveCommandServer server = new LiveCommandServer(port, model);
+            System.out.println("Accepting live commands on port " + server.getPort());
+            return server;
+        } catch (IOException e) {
+            throw new SimulationException("Cannot listen on port " + port + ": " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,59 @@
+package checkpoint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Saves and loads simulation checkpoints.
+ * A checkpoint is a header (magic number and format version) followed by whatever
+ * the caller writes, usually the VehicleStore, SignalScheduler and IntersectionNetwork
+ * snapshots in a fixed order. Saving writes to a temporary file and renames it over
+ * the old checkpoint, so a crash mid-write never leaves a half-written checkpoint behind.
+ */
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x53494d43; // "SIMC"
+    private static final int VERSION = 8;
+
+    @FunctionalInterface
+    public interface Writer {
+        void write(SnapshotOutput out) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Reader<T> {
+        T read(SnapshotInput in) throws IOException;
+    }
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Writes a checkpoint to file, replacing any previous one once it is complete.
+     * @param durable true to force the data to disk before the rename.
+     */
+    public static void save(Path file, boolean durable, Writer writer) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (SnapshotOutput out = new SnapshotOutput(tmp, durable)) {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            writer.write(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static <T> T load(Path file, Reader<T> reader) throws IOException {
+        try (SnapshotInput in = new SnapshotInput(file)) {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a simulation checkpoint");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has checkpoint format version " + version + ", expected " + VERSION);
+            }
+            return reader.read(in);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package checkpoint;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a snapshot written by SnapshotOutput, mapping the file a window at a time.
+ */
+public class SnapshotInput implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    public SnapshotInput(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        map(0);
+    }
+
+    public byte getByte() throws IOException {
+        ensure(1);
+        return window.get();
+    }
+
+    public int getInt() throws IOException {
+        ensure(4);
+        return window.getInt();
+    }
+
+    public long getLong() throws IOException {
+        ensure(8);
+        return window.getLong();
+    }
+
+    public double getDouble() throws IOException {
+        ensure(8);
+        return window.getDouble();
+    }
+
+    public String getString() throws IOException {
+        int length = getInt();
+        if (length < 0) {
+            throw new IOException("Corrupt snapshot: negative string length at offset " + position());
+        }
+        byte[] bytes = new byte[length];
+        getBytes(bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void getBytes(byte[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int n = Math.min(length, window.remaining());
+            window.get(values, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void getInts(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(4);
+            int n = Math.min(length, window.remaining() / 4);
+            window.asIntBuffer().get(values, offset, n);
+            window.position(window.position() + n * 4);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void getDoubles(double[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(8);
+            int n = Math.min(length, window.remaining() / 8);
+            window.asDoubleBuffer().get(values, offset, n);
+            window.position(window.position() + n * 8);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public long position() {
+        return windowStart + window.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() < bytes) {
+            long start = position();
+            if (size - start < bytes) {
+                throw new EOFException("Snapshot ends at offset " + size + ", needed " + bytes + " more bytes at " + start);
+            }
+            map(start);
+        }
+    }
+
+    private void map(long start) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SnapshotOutput.WINDOW, size - start));
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = start;
+    }
+}
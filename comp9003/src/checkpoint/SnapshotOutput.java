@@ -0,0 +1,134 @@
+package checkpoint;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a snapshot into a file through memory-mapped windows.
+ * The file is mapped a window at a time, so snapshots can be larger than the 2 GB a
+ * single mapping allows. Arrays are copied into the mapping in bulk, which makes
+ * writing a column of millions of values about as fast as a memory copy.
+ * All values are little-endian.
+ */
+public class SnapshotOutput implements AutoCloseable {
+
+    static final int WINDOW = 64 << 20;
+
+    private final FileChannel channel;
+    private final boolean durable;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    /**
+     * @param durable true to force the data to disk on close.
+     */
+    public SnapshotOutput(Path file, boolean durable) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.durable = durable;
+        map(0);
+    }
+
+    public void putByte(byte value) throws IOException {
+        ensure(1);
+        window.put(value);
+    }
+
+    public void putInt(int value) throws IOException {
+        ensure(4);
+        window.putInt(value);
+    }
+
+    public void putLong(long value) throws IOException {
+        ensure(8);
+        window.putLong(value);
+    }
+
+    public void putDouble(double value) throws IOException {
+        ensure(8);
+        window.putDouble(value);
+    }
+
+    public void putString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        putBytes(bytes, 0, bytes.length);
+    }
+
+    public void putBytes(byte[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int n = Math.min(length, window.remaining());
+            window.put(values, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void putInts(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(4);
+            int n = Math.min(length, window.remaining() / 4);
+            window.asIntBuffer().put(values, offset, n);
+            window.position(window.position() + n * 4);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void putDoubles(double[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(8);
+            int n = Math.min(length, window.remaining() / 8);
+            window.asDoubleBuffer().put(values, offset, n);
+            window.position(window.position() + n * 8);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Number of bytes written so far.
+     */
+    public long position() {
+        return windowStart + window.position();
+    }
+
+    /**
+     * Trims the file to the bytes written and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        long size = position();
+        if (durable) {
+            window.force();
+        }
+        window = null;
+        channel.truncate(size);
+        if (durable) {
+            channel.force(true);
+        }
+        channel.close();
+    }
+
+    // Starts a new window at the current position if fewer than 'bytes' bytes are left in this one
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() < bytes) {
+            if (durable) {
+                window.force();
+            }
+            map(position());
+        }
+    }
+
+    private void map(long start) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_WRITE, start, WINDOW);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = start;
+    }
+}
@@ -5,6 +5,13 @@ package exception;
  */
 public class InvalidIntersectionException extends Exception {
 
+    /**
+     * Shared instance without a stack trace, for hot paths that only need to know
+     * that a move hit a missing intersection.
+     */
+    public static final InvalidIntersectionException MISSING_INTERSECTION =
+            new InvalidIntersectionException("Intersection does not exist on this lane", false);
+
     /**
      * Constructs a new InvalidIntersectionException with the specified detail message.
      * @param message the detail message.
@@ -12,4 +19,21 @@ public class InvalidIntersectionException extends Exception {
     public InvalidIntersectionException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new InvalidIntersectionException that can skip filling in its stack trace.
+     * @param message the detail message.
+     * @param writableStackTrace false to leave the stack trace empty, which makes the exception cheap to create.
+     */
+    public InvalidIntersectionException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+
+    /**
+     * Creates an exception without a stack trace.
+     * @param message the detail message.
+     */
+    public static InvalidIntersectionException stackless(String message) {
+        return new InvalidIntersectionException(message, false);
+    }
 }
\ No newline at end of file
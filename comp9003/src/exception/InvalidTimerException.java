@@ -3,10 +3,30 @@ package exception;
  * 自定义异常类，用于处理无效的计时器参数
  */
 public class InvalidTimerException extends Exception {
+    /**
+     * 无堆栈的共享实例，用于频繁校验计时器的场景（如参数扫描）
+     */
+    public static final InvalidTimerException NON_POSITIVE =
+            new InvalidTimerException("Timer values must be positive", false);
+
     public InvalidTimerException(String msg) {
         super(msg);
 
     }
+
+    /**
+     * @param writableStackTrace 为false时不填充堆栈，创建开销很小
+     */
+    public InvalidTimerException(String msg, boolean writableStackTrace) {
+        super(msg, null, false, writableStackTrace);
+    }
+
+    /**
+     * 创建不带堆栈的异常，用于热点路径
+     */
+    public static InvalidTimerException stackless(String msg) {
+        return new InvalidTimerException(msg, false);
+    }
 }
 // 示例调用代码（添加到main方法中）
 //public static void main(String[] args) {
@@ -4,4 +4,18 @@ public class SimulationException extends Exception {
     public SimulationException(String message) {
         super(message);
     }
+
+    /**
+     * @param writableStackTrace false to leave the stack trace empty, which makes the exception cheap to create.
+     */
+    public SimulationException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+
+    /**
+     * Creates an exception without a stack trace, for hot paths.
+     */
+    public static SimulationException stackless(String message) {
+        return new SimulationException(message, false);
+    }
 }
@@ -0,0 +1,274 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import report.SimulationReporter;
+
+/**
+ * Counters and step latencies of a running simulation.
+ * Steps run one at a time go into the step latency histogram. Spans of steps worked out
+ * in one pass (a fast-forward to the next synchronization point) take one sample each
+ * in a histogram of their own, since averaging a span over its steps would fill the step
+ * histogram with copies of the mean.
+ * Every counter is a LongAdder, which stripes its cells across threads, and the latency
+ * histograms only do atomic adds, so recording takes no locks and allocates nothing;
+ * a recorder pays a few nanoseconds per step, not per vehicle. Readers combine the
+ * stripes when asked, through the getters, JMX or summary().
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+
+    private final LatencyHistogram stepLatency = new LatencyHistogram();
+    private final LatencyHistogram spanLatency = new LatencyHistogram();
+    private final LongAdder steps = new LongAdder();
+    private final LongAdder vehiclesMoved = new LongAdder();
+    private final LongAdder transitions = new LongAdder();
+    private final LongAdder intersectionAttempts = new LongAdder();
+    private final LongAdder invalidIntersections = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder allocationSamples = new LongAdder(); // steps whose allocation was measured
+    private volatile long startNanos = System.nanoTime();
+    private ObjectName registeredAs;
+
+    /**
+     * Records steps run one at a time that took elapsedNanos in total, moving vehicles
+     * vehicles per step; each is taken to have taken the mean.
+     */
+    public void recordSteps(long count, long elapsedNanos, int vehicles, long signalTransitions) {
+        if (count <= 0) {
+            return;
+        }
+        stepLatency.record(elapsedNanos / count, count);
+        steps.add(count);
+        vehiclesMoved.add(count * vehicles);
+        transitions.add(signalTransitions);
+    }
+
+    /**
+     * Records count steps worked out in one pass that took elapsedNanos, moving vehicles
+     * vehicles per step, as one span latency sample.
+     */
+    public void recordSpan(long count, long elapsedNanos, int vehicles, long signalTransitions) {
+        if (count <= 0) {
+            return;
+        }
+        spanLatency.record(elapsedNanos);
+        steps.add(count);
+        vehiclesMoved.add(count * vehicles);
+        transitions.add(signalTransitions);
+    }
+
+    /**
+     * Records signal transitions fired outside a recorded step.
+     */
+    public void recordTransitions(long signalTransitions) {
+        transitions.add(signalTransitions);
+    }
+
+    /**
+     * Records bytes allocated over the given number of steps.
+     */
+    public void recordAllocation(long count, long bytes) {
+        if (count > 0 && bytes >= 0) {
+            allocatedBytes.add(bytes);
+            allocationSamples.add(count);
+        }
+    }
+
+    /**
+     * Records intersection moves, of which invalid tried to use a non-existent intersection.
+     */
+    public void recordIntersections(long attempts, long invalid) {
+        intersectionAttempts.add(attempts);
+        if (invalid > 0) {
+            invalidIntersections.add(invalid);
+        }
+    }
+
+    /**
+     * Makes these metrics visible over JMX as comp9003:type=SimulationMetrics,name=&lt;name&gt;.
+     * Registering again under the same name replaces the previous bean.
+     */
+    public void register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("comp9003:type=SimulationMetrics,name=" + ObjectName.quote(name));
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(this, objectName);
+        registeredAs = objectName;
+    }
+
+    public void unregister() throws JMException {
+        if (registeredAs != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredAs);
+            registeredAs = null;
+        }
+    }
+
+    /**
+     * Human-readable end-of-run report, one line per entry.
+     */
+    public List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        lines.add("=== Simulation Metrics ===");
+        lines.add(String.format("Steps: %d, vehicles moved: %d (%.0f/s), signal transitions: %d (%.1f/s)",
+                getSteps(), getVehiclesMoved(), getVehiclesPerSecond(), getSignalTransitions(), getTransitionsPerSecond()));
+        if (stepLatency.getCount() > 0) {
+            lines.add(String.format("Step latency (us): mean %.1f, p50 %d, p99 %d, p99.9 %d, max %d",
+                    getStepLatencyMeanMicros(), getStepLatencyP50Micros(), getStepLatencyP99Micros(),
+                    getStepLatencyP999Micros(), getStepLatencyMaxMicros()));
+        }
+        if (spanLatency.getCount() > 0) {
+            lines.add(String.format("Fast-forward latency per sync interval (us, %d intervals): mean %.1f, p50 %d, p99 %d, max %d",
+                    getSpans(), getSpanLatencyMeanMicros(), getSpanLatencyP50Micros(), getSpanLatencyP99Micros(),
+                    getSpanLatencyMaxMicros()));
+        }
+        if (getIntersectionAttempts() > 0) {
+            lines.add(String.format("Intersections: %d attempts, %d invalid (%.2f%%)",
+                    getIntersectionAttempts(), getInvalidIntersections(), 100 * getInvalidIntersectionRate()));
+        }
+        double allocated = getAllocatedBytesPerStep();
+        lines.add(allocated < 0 ? "Allocation per step: not available"
+                : String.format("Allocation per step: %.0f bytes", allocated));
+        return lines;
+    }
+
+    /**
+     * Sends the summary to a reporter as messages.
+     */
+    public void report(SimulationReporter reporter) {
+        for (String line : summary()) {
+            reporter.message(line);
+        }
+        reporter.flush();
+    }
+
+    @Override
+    public long getSteps() {
+        return steps.sum();
+    }
+
+    @Override
+    public long getVehiclesMoved() {
+        return vehiclesMoved.sum();
+    }
+
+    @Override
+    public long getSignalTransitions() {
+        return transitions.sum();
+    }
+
+    @Override
+    public double getVehiclesPerSecond() {
+        return perSecond(vehiclesMoved.sum());
+    }
+
+    @Override
+    public double getTransitionsPerSecond() {
+        return perSecond(transitions.sum());
+    }
+
+    @Override
+    public double getStepLatencyMeanMicros() {
+        return stepLatency.getMean() / 1000.0;
+    }
+
+    @Override
+    public long getStepLatencyP50Micros() {
+        return stepLatency.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getStepLatencyP99Micros() {
+        return stepLatency.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getStepLatencyP999Micros() {
+        return stepLatency.percentile(99.9) / 1000;
+    }
+
+    @Override
+    public long getStepLatencyMaxMicros() {
+        return stepLatency.getMax() / 1000;
+    }
+
+    @Override
+    public long getSpans() {
+        return spanLatency.getCount();
+    }
+
+    @Override
+    public double getSpanLatencyMeanMicros() {
+        return spanLatency.getMean() / 1000.0;
+    }
+
+    @Override
+    public long getSpanLatencyP50Micros() {
+        return spanLatency.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getSpanLatencyP99Micros() {
+        return spanLatency.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getSpanLatencyMaxMicros() {
+        return spanLatency.getMax() / 1000;
+    }
+
+    @Override
+    public long getIntersectionAttempts() {
+        return intersectionAttempts.sum();
+    }
+
+    @Override
+    public long getInvalidIntersections() {
+        return invalidIntersections.sum();
+    }
+
+    @Override
+    public double getInvalidIntersectionRate() {
+        long attempts = intersectionAttempts.sum();
+        return attempts == 0 ? 0.0 : (double) invalidIntersections.sum() / attempts;
+    }
+
+    @Override
+    public double getAllocatedBytesPerStep() {
+        long samples = allocationSamples.sum();
+        return samples == 0 ? -1 : (double) allocatedBytes.sum() / samples;
+    }
+
+    @Override
+    public void reset() {
+        stepLatency.reset();
+        spanLatency.reset();
+        steps.reset();
+        vehiclesMoved.reset();
+        transitions.reset();
+        intersectionAttempts.reset();
+        invalidIntersections.reset();
+        allocatedBytes.reset();
+        allocationSamples.reset();
+        startNanos = System.nanoTime();
+    }
+
+    public LatencyHistogram getStepLatency() {
+        return stepLatency;
+    }
+
+    public LatencyHistogram getSpanLatency() {
+        return spanLatency;
+    }
+
+    private double perSecond(long count) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0.0 : count / seconds;
+    }
+}
@@ -0,0 +1,57 @@
+package metrics;
+
+/**
+ * Management interface of SimulationMetrics, as seen from JConsole or any JMX client.
+ * Times are in microseconds, rates per second of wall-clock time since the last reset.
+ */
+public interface SimulationMetricsMBean {
+
+    long getSteps();
+
+    long getVehiclesMoved();
+
+    long getSignalTransitions();
+
+    double getVehiclesPerSecond();
+
+    double getTransitionsPerSecond();
+
+    double getStepLatencyMeanMicros();
+
+    long getStepLatencyP50Micros();
+
+    long getStepLatencyP99Micros();
+
+    long getStepLatencyP999Micros();
+
+    long getStepLatencyMaxMicros();
+
+    /**
+     * Spans of steps fast-forwarded in one pass, each one sample of the span latency.
+     */
+    long getSpans();
+
+    double getSpanLatencyMeanMicros();
+
+    long getSpanLatencyP50Micros();
+
+    long getSpanLatencyP99Micros();
+
+    long getSpanLatencyMaxMicros();
+
+    long getIntersectionAttempts();
+
+    long getInvalidIntersections();
+
+    /**
+     * Share of intersection moves that tried to use a non-existent intersection.
+     */
+    double getInvalidIntersectionRate();
+
+    /**
+     * Bytes allocated by the stepping thread per step, or -1 if the JVM can't measure it.
+     */
+    double getAllocatedBytesPerStep();
+
+    void reset();
+}
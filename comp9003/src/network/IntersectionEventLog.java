@@ -0,0 +1,181 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * Binary activity log for one IntersectionNetwork tracker.
+ * Events are stored as primitives in a ring of parallel arrays: an event type,
+ * the intersection index, the lane and two type-specific arguments. Nothing is
+ * formatted when an event is recorded; text is only built when someone reads it.
+ * The log never holds more than its capacity; the retention policy decides whether
+ * the oldest events are overwritten or new events are dropped once it is full.
+ */
+public class IntersectionEventLog {
+
+    // Event types
+    public static final byte MOVED = 0;     // moved through an intersection
+    public static final byte SKIPPED = 1;   // skipped as per interaction pattern
+    public static final byte MISSING = 2;   // tried to use an intersection that doesn't exist
+    public static final byte COMPLETED = 3; // all intersections processed
+    public static final byte RANGE = 4;     // bulk move: index = first, argA = end (exclusive), argB = moved through
+    public static final byte JUMP = 5;      // fast-forward: index = first, argA = end (exclusive), argB = missing
+
+    public enum Retention {
+        KEEP_LATEST,   // overwrite the oldest event when full
+        KEEP_EARLIEST  // drop new events when full
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final int INITIAL_ARRAY_SIZE = 16;
+
+    private final int capacity;
+    private final Retention retention;
+    private byte[] types;
+    private int[] indexes;
+    private short[] lanes;
+    private int[] argsA;
+    private int[] argsB;
+    private int head;  // slot of the oldest event
+    private int size;
+    private long dropped;
+
+    public IntersectionEventLog() {
+        this(DEFAULT_CAPACITY, Retention.KEEP_LATEST);
+    }
+
+    /**
+     * @param capacity maximum number of events kept.
+     * @param retention what to do with new events once the log is full.
+     */
+    public IntersectionEventLog(int capacity, Retention retention) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Event log capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.retention = retention;
+        int initial = Math.min(capacity, INITIAL_ARRAY_SIZE);
+        types = new byte[initial];
+        indexes = new int[initial];
+        lanes = new short[initial];
+        argsA = new int[initial];
+        argsB = new int[initial];
+    }
+
+    public void record(byte type, int index, int lane) {
+        record(type, index, lane, 0, 0);
+    }
+
+    public void record(byte type, int index, int lane, int argA, int argB) {
+        int slot;
+        if (size < capacity) {
+            if (size == types.length) {
+                grow();
+            }
+            slot = physical(size++);
+        } else if (retention == Retention.KEEP_LATEST) {
+            slot = head;
+            head = (head + 1) % types.length;
+            dropped++;
+        } else {
+            dropped++;
+            return;
+        }
+        types[slot] = type;
+        indexes[slot] = index;
+        lanes[slot] = (short) lane;
+        argsA[slot] = argA;
+        argsB[slot] = argB;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of events lost to the retention policy.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    // Accessors take the event's position in the log, 0 being the oldest kept event
+    public byte getType(int i) {
+        return types[physical(i)];
+    }
+
+    public int getIndex(int i) {
+        return indexes[physical(i)];
+    }
+
+    public int getLane(int i) {
+        return lanes[physical(i)];
+    }
+
+    public int getArgA(int i) {
+        return argsA[physical(i)];
+    }
+
+    public int getArgB(int i) {
+        return argsB[physical(i)];
+    }
+
+    /**
+     * Formats one event as the text status line for the given vehicle.
+     */
+    public String format(int i, String vehicleId) {
+        int p = physical(i);
+        int index = indexes[p];
+        int lane = lanes[p] + 1;
+        switch (types[p]) {
+            case COMPLETED:
+                return vehicleId + ": All intersections processed.";
+            case RANGE:
+                int end = argsA[p];
+                int moved = argsB[p];
+                int skipped = (end - index) - moved;
+                return vehicleId + " at Intersections " + (index + 1) + "-" + end + " on Lane " + lane +
+                        ": Moved through " + moved + ", skipped " + skipped + " as per interaction pattern.";
+            case JUMP:
+                return vehicleId + " at Intersections " + (index + 1) + "-" + argsA[p] + " on Lane " + lane +
+                        ": Fast-forwarded, " + argsB[p] + " non-existent intersection(s) passed.";
+            default:
+                String prefix = vehicleId + " at Intersection " + (index + 1) + " (Index " + index + ") on Lane " + lane + ": ";
+                switch (types[p]) {
+                    case MOVED:
+                        return prefix + "Successfully moved through.";
+                    case SKIPPED:
+                        return prefix + "Skipped as per interaction pattern.";
+                    default:
+                        return prefix + "Attempted to move through a non-existent intersection.";
+                }
+        }
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        dropped = 0;
+    }
+
+    private int physical(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Event " + i + " out of range, size " + size);
+        }
+        int p = head + i;
+        return p < types.length ? p : p - types.length;
+    }
+
+    // Only called before the log first fills up, while head is still 0
+    private void grow() {
+        int newSize = Math.min(capacity, types.length * 2);
+        types = Arrays.copyOf(types, newSize);
+        indexes = Arrays.copyOf(indexes, newSize);
+        lanes = Arrays.copyOf(lanes, newSize);
+        argsA = Arrays.copyOf(argsA, newSize);
+        argsB = Arrays.copyOf(argsB, newSize);
+    }
+}
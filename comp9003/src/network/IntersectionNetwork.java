@@ -1,7 +1,12 @@
 package network;
+import java.io.IOException;
+import checkpoint.SnapshotInput;
+import checkpoint.SnapshotOutput;
 import exception.InvalidIntersectionException;
+import metrics.SimulationMetrics;
+import report.SimulationReporter;
+import trace.TraceRecorder;
 import java.util.ArrayList;
-import java.util.Arrays; // For Arrays.toString()
 import vehicle.Vehicle;
 
 /**
@@ -11,118 +16,325 @@ import vehicle.Vehicle;
  */
 public class IntersectionNetwork {
 
-    // Shared road layout for all "vehicles"
-    private static final int NUM_LANES = 3; // A 3-lane road
-    private static final int NUM_INTERSECTIONS = 10; // A straight road with 10 intersections
-    private static final int[][] roadLayout = new int[NUM_LANES][NUM_INTERSECTIONS];
-
-    static {
-        // Initialize road layout:
-        // Intersection are on lanes 1 and 3 (because of 0-indexed, 0=Lane1, 2=Lane3).
-        // A value of 1 indicates an intersection, and a 0 indicates no intersection.
-        for (int i = 0; i < NUM_INTERSECTIONS; i++) {
-            roadLayout[0][i] = 1; // Lane 1 has intersections
-            roadLayout[1][i] = 0; // Lane 2 has no intersections
-            roadLayout[2][i] = 1; // Lane 3 has intersections
-        }
-    }
+    // Shared road layout and interaction pattern for all "vehicles" on this road
+    private final RoadLayout roadLayout;
+    private final long[] interactionPattern; // Bit i set: interact with intersection i
+    private final int numIntersections;
 
     // Instance variables for each conceptual vehicle
     private final String vehicleId;
     private final int vehicleLane;
-    private final int[] interactionPattern; // Defines how this vehicle interacts
     private int currentIntersectionIndex; // Tracks the next intersection to be processed
-    private final ArrayList<String> statusLog; // Logs the activity of this vehicle
+    private final IntersectionEventLog eventLog; // Logs the activity of this vehicle
+    private SimulationMetrics metrics; // counts attempts and invalid intersections, null if not measured
+    private TraceRecorder trace; // records each outcome, null if not traced
+    private boolean completionLogged;
 
     /**
-     * Constructor for IntersectionNetwork.
+     * Constructor for IntersectionNetwork on the standard 3-lane, 10-intersection road.
      * Each object is considered a vehicle for tracking intersection passage.
      * @param vehicleId A name or ID for this conceptual vehicle.
      * @param initialLane The lane (0, 1,2) this vehicle will use.
      */
     public IntersectionNetwork(String vehicleId, int initialLane) {
+        this(RoadLayout.standard(), vehicleId, initialLane);
+    }
+
+    /**
+     * Constructor for a vehicle that moves through every alternate intersection of the given road.
+     */
+    public IntersectionNetwork(RoadLayout layout, String vehicleId, int initialLane) {
+        this(layout, layout.alternatingPattern(), vehicleId, initialLane);
+    }
+
+    /**
+     * Constructor for IntersectionNetwork with an explicit interaction pattern.
+     * @param layout The road, shared with other trackers.
+     * @param interactionPattern Bitset of intersections to interact with, shared and not copied.
+     * @param vehicleId A name or ID for this conceptual vehicle.
+     * @param initialLane The 0-based lane this vehicle will use.
+     */
+    public IntersectionNetwork(RoadLayout layout, long[] interactionPattern, String vehicleId, int initialLane) {
+        this(layout, interactionPattern, vehicleId, initialLane, new IntersectionEventLog());
+    }
+
+    /**
+     * Constructor for IntersectionNetwork with an explicit interaction pattern and event log.
+     * @param eventLog Where activity is recorded; its capacity and retention bound the memory used.
+     */
+    public IntersectionNetwork(RoadLayout layout, long[] interactionPattern, String vehicleId, int initialLane,
+                               IntersectionEventLog eventLog) {
         this.vehicleId = vehicleId;
-        if (initialLane < 0 || initialLane >= NUM_LANES) {
-            throw new IllegalArgumentException("Initial lane must be between 0 and " + (NUM_LANES - 1) +
+        if (initialLane < 0 || initialLane >= layout.getNumLanes()) {
+            throw new IllegalArgumentException("Initial lane must be between 0 and " + (layout.getNumLanes() - 1) +
                     ". Received(invalid): " + initialLane);
         }
-        this.vehicleLane = initialLane;
-
-        // Each vehicle move through every alternate intersection.
-        // Assign 1 for interaction, 0 for skip
-        this.interactionPattern = new int[NUM_INTERSECTIONS];
-        for (int i = 0; i < NUM_INTERSECTIONS; i++) {
-            if ((i % 2) == 0) { // Intersections at index 0, 2, 4...)
-                this.interactionPattern[i] = 1; // Interact this point
-            } else {
-                this.interactionPattern[i] = 0; // Skip
-            }
+        if (interactionPattern.length < RoadLayout.words(layout.getNumIntersections())) {
+            throw new IllegalArgumentException("Interaction pattern does not cover all " +
+                    layout.getNumIntersections() + " intersections");
         }
+        this.vehicleLane = initialLane;
+        this.roadLayout = layout;
+        this.interactionPattern = interactionPattern;
+        this.numIntersections = layout.getNumIntersections();
 
         this.currentIntersectionIndex = 0;
-        this.statusLog = new ArrayList<>(); // Use ArrayList to manage status messages
+        this.eventLog = eventLog;
     }
 
     public String getVehicleId() {
         return vehicleId;
     }
+
+    public int getCurrentIntersectionIndex() {
+        return currentIntersectionIndex;
+    }
+
+    public int getVehicleLane() {
+        return vehicleLane;
+    }
     /**
      * Simulates the vehicle attempt to move through the current intersection
      * based on its interaction pattern and the road layout.
      * Throws InvalidIntersectionException if an illegal access is attempted, like on a middle lane.
      */
     public void moveThrough() throws InvalidIntersectionException {
-        if (currentIntersectionIndex >= NUM_INTERSECTIONS) {
-            String endMsg = vehicleId + ": All intersections processed.";
-            if (!statusLog.contains(endMsg)) statusLog.add(endMsg);
-            return;
+        if (tryMoveThrough() == MoveOutcome.MISSING) {
+            int intersectionSerial = currentIntersectionIndex; // already advanced past it, so this is the 1-based number
+            throw new InvalidIntersectionException(vehicleId + " - Access denied: Intersection " +
+                    intersectionSerial + " does not exist on Lane " + (vehicleLane + 1) + ".");
         }
+    }
 
-        int intersectionSerial = currentIntersectionIndex + 1; // 1-based for logging
-        String logPrefix = vehicleId + " at Intersection " + intersectionSerial + " (Index " + currentIntersectionIndex +") on Lane " + (vehicleLane + 1) + ": ";
+    /**
+     * Same as moveThrough(), but reports an illegal access as MoveOutcome.MISSING instead of
+     * throwing, so hot loops where many vehicles hit missing intersections pay nothing extra.
+     */
+    public MoveOutcome tryMoveThrough() {
+        if (currentIntersectionIndex >= numIntersections) {
+            if (!completionLogged) {
+                eventLog.record(IntersectionEventLog.COMPLETED, numIntersections, vehicleLane);
+                completionLogged = true;
+            }
+            return MoveOutcome.COMPLETED;
+        }
 
-        boolean intendsToUse = (interactionPattern[currentIntersectionIndex] == 1);
+        boolean intendsToUse = RoadLayout.isSet(interactionPattern, currentIntersectionIndex);
+        MoveOutcome outcome;
 
         if (intendsToUse) {
             // Check if an actual intersection physically exists at the vehicle's current lane?
-            if (roadLayout[vehicleLane][currentIntersectionIndex] == 1) {
-                statusLog.add(logPrefix + "Successfully moved through.");
+            if (roadLayout.hasIntersection(vehicleLane, currentIntersectionIndex)) {
+                eventLog.record(IntersectionEventLog.MOVED, currentIntersectionIndex, vehicleLane);
+                outcome = MoveOutcome.MOVED;
             } else {
-                // Trying to use an intersection That doesn't exist
-                String errorMsg = logPrefix + "Attempted to move through a non-existent intersection.";
-                statusLog.add(errorMsg);
-                currentIntersectionIndex++; // advance past this conceptual point
-                throw new InvalidIntersectionException(vehicleId + " - Access denied: Intersection " +
-                        intersectionSerial + " does not exist on Lane " + (vehicleLane + 1) + ".");
+                // Trying to use an intersection That doesn't exist; advance past this conceptual point anyway
+                eventLog.record(IntersectionEventLog.MISSING, currentIntersectionIndex, vehicleLane);
+                outcome = MoveOutcome.MISSING;
             }
         } else {
-            statusLog.add(logPrefix + "Skipped as per interaction pattern.");
+            eventLog.record(IntersectionEventLog.SKIPPED, currentIntersectionIndex, vehicleLane);
+            outcome = MoveOutcome.SKIPPED;
+        }
+        if (metrics != null) {
+            metrics.recordIntersections(1, outcome == MoveOutcome.MISSING ? 1 : 0);
+        }
+        if (trace != null) {
+            trace.intersection(vehicleId, currentIntersectionIndex, outcome);
         }
         currentIntersectionIndex++;
+        return outcome;
+    }
+
+    /**
+     * Moves through up to count intersections in one call.
+     * The pattern is checked against the lane's layout a 64-bit word at a time, so a
+     * long stretch of valid intersections costs a few AND operations and one log entry.
+     * Stops at the first intersection that doesn't exist on this lane and throws for it,
+     * exactly like moveThrough() would when reaching it.
+     * @return the number of intersections processed.
+     */
+    public int moveThrough(int count) throws InvalidIntersectionException {
+        if (currentIntersectionIndex >= numIntersections) {
+            moveThrough(); // records completion
+            return 0;
+        }
+        if (count <= 0) {
+            return 0;
+        }
+        int from = currentIntersectionIndex;
+        int to = (int) Math.min((long) from + count, numIntersections);
+        int missing = roadLayout.firstMissing(vehicleLane, interactionPattern, from, to);
+        int end = missing < 0 ? to : missing;
+        if (end > from) {
+            int passed = roadLayout.countPassable(vehicleLane, interactionPattern, from, end);
+            eventLog.record(IntersectionEventLog.RANGE, from, vehicleLane, end, passed);
+            currentIntersectionIndex = end;
+            if (metrics != null) {
+                metrics.recordIntersections(end - from, 0);
+            }
+            if (trace != null) {
+                trace.intersectionJump(vehicleId, from, end, 0);
+            }
+        }
+        if (missing >= 0) {
+            moveThrough(); // logs, advances and throws for the missing intersection
+        }
+        return end - from;
+    }
+
+    /**
+     * Processes the next count intersections at once, ending where count calls to
+     * tryMoveThrough() would, missing intersections included. The outcome depends only
+     * on the pattern and layout bits, so it is counted a word at a time and the whole
+     * jump is logged as one entry.
+     * @return the number of non-existent intersections the vehicle tried to use on the way.
+     */
+    public int fastForward(int count) {
+        if (currentIntersectionIndex >= numIntersections) {
+            tryMoveThrough(); // records completion
+            return 0;
+        }
+        if (count <= 0) {
+            return 0;
+        }
+        int from = currentIntersectionIndex;
+        int to = (int) Math.min((long) from + count, numIntersections);
+        int missing = RoadLayout.countSet(interactionPattern, from, to)
+                - roadLayout.countPassable(vehicleLane, interactionPattern, from, to);
+        eventLog.record(IntersectionEventLog.JUMP, from, vehicleLane, to, missing);
+        currentIntersectionIndex = to;
+        if (metrics != null) {
+            metrics.recordIntersections(to - from, missing);
+        }
+        if (trace != null) {
+            trace.intersectionJump(vehicleId, from, to, missing);
+        }
+        return missing;
+    }
+
+    /**
+     * Fast-forwards to the given 0-based intersection index.
+     * @return the number of non-existent intersections the vehicle tried to use on the way.
+     */
+    public int advanceTo(int intersectionIndex) {
+        if (intersectionIndex < currentIntersectionIndex) {
+            throw new IllegalArgumentException("Already at intersection " + currentIntersectionIndex +
+                    ", cannot go back to " + intersectionIndex);
+        }
+        return fastForward(intersectionIndex - currentIntersectionIndex);
     }
 
     /**
      * Shows the current intersection status of this vehicle.
      */
     public void showIntersectionStatus() {
-        System.out.println("----- Intersection Status for: " + vehicleId + " ----");
-        System.out.println("Current Lane: " + (vehicleLane + 1));
-        System.out.println("Interaction Pattern: " + Arrays.toString(interactionPattern));
-        if (currentIntersectionIndex >= NUM_INTERSECTIONS) {
-            System.out.println("Next Intersection to Process: Completed all intersections.");
+        showIntersectionStatus(SimulationReporter.console());
+    }
+
+    /**
+     * Reports the current intersection status of this vehicle, one message per line.
+     * Log entries are only formatted here, when they are actually read.
+     */
+    public void showIntersectionStatus(SimulationReporter reporter) {
+        reporter.message("----- Intersection Status for: " + vehicleId + " ----");
+        reporter.message("Current Lane: " + (vehicleLane + 1));
+        reporter.message("Interaction Pattern: " + patternToString());
+        if (currentIntersectionIndex >= numIntersections) {
+            reporter.message("Next Intersection to Process: Completed all intersections.");
         } else {
-            System.out.println("Next Intersection to Process (0-indexed): " + currentIntersectionIndex +
+            reporter.message("Next Intersection to Process (0-indexed): " + currentIntersectionIndex +
                     " (Which is point number " + (currentIntersectionIndex + 1) + ")");
         }
-        System.out.println("Activity Log:");
-        if (statusLog.isEmpty()) {
-            System.out.println("  No activity recorded yet.");
+        reporter.message("Activity Log:");
+        if (eventLog.getDropped() > 0) {
+            reporter.message("  (" + eventLog.getDropped() + " entries dropped by the log's retention policy)");
+        }
+        if (eventLog.isEmpty()) {
+            reporter.message("  No activity recorded yet.");
         } else {
-            for (String log : statusLog) {
-                System.out.println("  " + log);
+            for (int i = 0; i < eventLog.size(); i++) {
+                reporter.message("  " + eventLog.format(i, vehicleId));
             }
         }
-        System.out.println("----------------------");
+        reporter.message("----------------------");
+        reporter.flush();
+    }
+
+    /**
+     * Writes this tracker's progress to a checkpoint. The layout, pattern and event log
+     * are not saved; the run that resumes supplies the same layout and pattern.
+     */
+    public void writeSnapshot(SnapshotOutput out) throws IOException {
+        out.putString(vehicleId);
+        out.putInt(vehicleLane);
+        out.putInt(currentIntersectionIndex);
+        out.putByte((byte) (completionLogged ? 1 : 0));
+    }
+
+    /**
+     * Rebuilds a tracker written by writeSnapshot on the given road.
+     */
+    public static IntersectionNetwork readSnapshot(SnapshotInput in, RoadLayout layout, long[] interactionPattern)
+            throws IOException {
+        String vehicleId = in.getString();
+        int lane = in.getInt();
+        int index = in.getInt();
+        boolean completionLogged = in.getByte() != 0;
+        if (index < 0 || index > layout.getNumIntersections()) {
+            throw new IOException("Tracker " + vehicleId + " is at intersection " + index +
+                    ", beyond a road of " + layout.getNumIntersections());
+        }
+        IntersectionNetwork tracker = new IntersectionNetwork(layout, interactionPattern, vehicleId, lane);
+        tracker.currentIntersectionIndex = index;
+        tracker.completionLogged = completionLogged;
+        return tracker;
+    }
+
+    /**
+     * This vehicle on another road, at the same intersection index and with the same event
+     * log, metrics and trace: how a tracker carries on when it is re-routed onto a road
+     * whose intersections up to that index are the ones it has already passed.
+     */
+    public IntersectionNetwork onRoad(RoadLayout layout, long[] interactionPattern) {
+        if (currentIntersectionIndex > layout.getNumIntersections()) {
+            throw new IllegalArgumentException("Tracker " + vehicleId + " is at intersection " + currentIntersectionIndex +
+                    ", beyond a road of " + layout.getNumIntersections());
+        }
+        IntersectionNetwork moved = new IntersectionNetwork(layout, interactionPattern, vehicleId, vehicleLane, eventLog);
+        moved.currentIntersectionIndex = currentIntersectionIndex;
+        moved.completionLogged = completionLogged;
+        moved.metrics = metrics;
+        moved.trace = trace;
+        return moved;
+    }
+
+    /**
+     * Counts this vehicle's intersection attempts, and the invalid ones, in the given metrics.
+     */
+    public void setMetrics(SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records this vehicle's intersection outcomes in the given trace.
+     */
+    public void setTraceRecorder(TraceRecorder trace) {
+        this.trace = trace;
+    }
+
+    public IntersectionEventLog getEventLog() {
+        return eventLog;
+    }
+
+    // Formats the pattern like Arrays.toString on an int[] of 1s and 0s
+    private String patternToString() {
+        StringBuilder sb = new StringBuilder(numIntersections * 3 + 2).append('[');
+        for (int i = 0; i < numIntersections; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(RoadLayout.isSet(interactionPattern, i) ? '1' : '0');
+        }
+        return sb.append(']').toString();
     }
 
     // Main method for testing this class individually
@@ -136,15 +348,16 @@ public class IntersectionNetwork {
         simVehicles.add(new IntersectionNetwork("V2", 1)); // Lane 2, aka Middle Lane (problematic)
         simVehicles.add(new IntersectionNetwork("V3", 2)); // Lane 3
 
-        System.out.println("Simulating intersection passage for " + NUM_INTERSECTIONS + " intersection points...\n");
+        int numIntersections = RoadLayout.standard().getNumIntersections();
+        System.out.println("Simulating intersection passage for " + numIntersections + " intersection points...\n");
 
         // Loop to simulate passage through all conceptual intersection points
-        for (int i = 0; i < NUM_INTERSECTIONS; i++) {
+        for (int i = 0; i < numIntersections; i++) {
             System.out.println(">>> Processing Conceptual Intersection Point " + (i + 1) + " <<<");
             for (IntersectionNetwork tracker : simVehicles) {
                 try {
                     // Ensure moveThrough is only called if there are intersections left for this vehicle
-                    if (tracker.currentIntersectionIndex < NUM_INTERSECTIONS) {
+                    if (tracker.currentIntersectionIndex < tracker.numIntersections) {
                         tracker.moveThrough();
                     }
                 } catch (InvalidIntersectionException e) {
@@ -0,0 +1,11 @@
+package network;
+
+/**
+ * Result of one IntersectionNetwork.tryMoveThrough() call.
+ */
+public enum MoveOutcome {
+    MOVED,     // moved through an existing intersection
+    SKIPPED,   // skipped as per interaction pattern
+    MISSING,   // the pattern wanted an intersection that doesn't exist on this lane
+    COMPLETED  // all intersections had already been processed
+}
@@ -0,0 +1,315 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import signal.TrafficSignal;
+
+/**
+ * A directed road network: intersections are nodes, road sections between them are edges.
+ * Edges are kept in compressed sparse row form, one run of edge arrays per source node
+ * found through an offsets array, with a second index of the edges entering each node.
+ * A node's edges are therefore contiguous and a search touches a few flat arrays rather
+ * than a web of objects.
+ *
+ * Every edge says which lanes may use it, as a bit mask (bit 0 for lane 0), and costs
+ * its travel time in seconds plus the expected wait at the signal at its end, if any:
+ * a vehicle arriving at a random moment waits out the rest of red and yellow, on average
+ * (red + yellow)^2 / (2 * cycle). A closed edge costs Double.POSITIVE_INFINITY.
+ * Cost changes, from closures or from new timers on a signal of the graph (signals tell
+ * the graph themselves), are passed to the registered listeners so cached routes can be
+ * dropped selectively.
+ */
+public class RoadGraph {
+
+    /**
+     * Told about each edge whose cost changes.
+     */
+    @FunctionalInterface
+    public interface CostListener {
+        void costChanged(int edge, double oldCost, double newCost);
+    }
+
+    private final int numNodes;
+    private final int[] offsets; // out-edges of node v are [offsets[v], offsets[v + 1])
+    private final int[] source;
+    private final int[] target;
+    private final double[] travelTime;
+    private final int[] lanes;
+    private final int[] inOffsets; // edges into node v are inEdges[inOffsets[v] .. inOffsets[v + 1])
+    private final int[] inEdges;
+    private final double[] cost;
+    private final long[] closed;
+    private final TrafficSignal[] signals; // per node, null where there is none
+    private final Runnable[] signalListeners; // per node, what its signal runs when its timers change
+    private final double[] wait; // per node, expected signal wait as of the last refresh
+    private final List<CostListener> listeners = new ArrayList<>();
+
+    private RoadGraph(Builder b) {
+        numNodes = b.numNodes;
+        int m = b.edgeCount;
+        offsets = new int[numNodes + 1];
+        inOffsets = new int[numNodes + 1];
+        for (int e = 0; e < m; e++) {
+            offsets[b.from[e] + 1]++;
+            inOffsets[b.to[e] + 1]++;
+        }
+        for (int v = 0; v < numNodes; v++) {
+            offsets[v + 1] += offsets[v];
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        source = new int[m];
+        target = new int[m];
+        travelTime = new double[m];
+        lanes = new int[m];
+        int[] next = Arrays.copyOf(offsets, numNodes);
+        for (int e = 0; e < m; e++) { // stable: a node's edges keep the order they were added in
+            int at = next[b.from[e]]++;
+            source[at] = b.from[e];
+            target[at] = b.to[e];
+            travelTime[at] = b.length[e] / b.speed[e];
+            lanes[at] = b.lanes[e];
+        }
+        inEdges = new int[m];
+        int[] nextIn = Arrays.copyOf(inOffsets, numNodes);
+        for (int e = 0; e < m; e++) {
+            inEdges[nextIn[target[e]]++] = e;
+        }
+        cost = Arrays.copyOf(travelTime, m);
+        closed = new long[(m + 63) >>> 6];
+        signals = new TrafficSignal[numNodes];
+        signalListeners = new Runnable[numNodes];
+        wait = new double[numNodes];
+    }
+
+    /**
+     * Collects nodes and edges, then lays them out in compressed form.
+     */
+    public static class Builder {
+        private final int numNodes;
+        private int edgeCount;
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private double[] length = new double[16];
+        private double[] speed = new double[16];
+        private int[] lanes = new int[16];
+
+        public Builder(int numNodes) {
+            if (numNodes <= 0) {
+                throw new IllegalArgumentException("Graph must have at least one node. Received: " + numNodes);
+            }
+            this.numNodes = numNodes;
+        }
+
+        /**
+         * Adds a one-way edge.
+         * @param edgeLength length in road position units.
+         * @param edgeSpeed speed on the edge in units per second.
+         * @param laneMask lanes allowed on the edge, bit i for lane i.
+         */
+        public Builder addEdge(int fromNode, int toNode, double edgeLength, double edgeSpeed, int laneMask) {
+            checkNode(fromNode);
+            checkNode(toNode);
+            if (!(edgeLength >= 0) || !(edgeSpeed > 0) || Double.isInfinite(edgeLength)) {
+                throw new IllegalArgumentException("Edge needs a finite length and a positive speed. Received: "
+                        + edgeLength + ", " + edgeSpeed);
+            }
+            if (edgeCount == from.length) {
+                int n = edgeCount * 2;
+                from = Arrays.copyOf(from, n);
+                to = Arrays.copyOf(to, n);
+                length = Arrays.copyOf(length, n);
+                speed = Arrays.copyOf(speed, n);
+                lanes = Arrays.copyOf(lanes, n);
+            }
+            from[edgeCount] = fromNode;
+            to[edgeCount] = toNode;
+            length[edgeCount] = edgeLength;
+            speed[edgeCount] = edgeSpeed;
+            lanes[edgeCount] = laneMask;
+            edgeCount++;
+            return this;
+        }
+
+        public RoadGraph build() {
+            return new RoadGraph(this);
+        }
+
+        private void checkNode(int node) {
+            if (node < 0 || node >= numNodes) {
+                throw new IllegalArgumentException("Node must be between 0 and " + (numNodes - 1) + ". Received(invalid): " + node);
+            }
+        }
+    }
+
+    /**
+     * The straight road of a RoadLayout as a graph: one node per intersection and an edge
+     * from each to the next, open on the lanes where the intersection it leads into exists.
+     * @param spacing distance between neighbouring intersections.
+     * @param speed speed on every edge in units per second.
+     */
+    public static RoadGraph fromLayout(RoadLayout layout, double spacing, double speed) {
+        int n = layout.getNumIntersections();
+        Builder builder = new Builder(n);
+        for (int i = 0; i + 1 < n; i++) {
+            int mask = 0;
+            for (int lane = 0; lane < layout.getNumLanes() && lane < 32; lane++) {
+                if (layout.hasIntersection(lane, i + 1)) {
+                    mask |= 1 << lane;
+                }
+            }
+            builder.addEdge(i, i + 1, spacing, speed, mask);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Puts a signal at a node, so every edge into it costs the signal's expected wait,
+     * repriced whenever the signal's timers change. Pass null to remove it.
+     */
+    public void setSignal(int node, TrafficSignal signal) {
+        checkNode(node);
+        if (signals[node] != null) {
+            signals[node].removeTimerListener(signalListeners[node]);
+            signalListeners[node] = null;
+        }
+        signals[node] = signal;
+        if (signal != null) {
+            signalListeners[node] = () -> updateWait(node);
+            signal.addTimerListener(signalListeners[node]);
+        }
+        updateWait(node);
+    }
+
+    /**
+     * Re-reads the timers of every signal on the graph and updates the edges into the
+     * nodes whose expected wait changed. Signals pass on their own timer changes, so
+     * this is only needed for timers restored without setTimers.
+     * @return the number of nodes whose wait changed.
+     */
+    public int refreshSignals() {
+        int changed = 0;
+        for (int v = 0; v < numNodes; v++) {
+            if (signals[v] != null && updateWait(v)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Closes an edge to all traffic, or opens it again.
+     */
+    public void setClosed(int edge, boolean isClosed) {
+        checkEdge(edge);
+        if (isClosed == isClosed(edge)) {
+            return;
+        }
+        if (isClosed) {
+            closed[edge >>> 6] |= 1L << edge;
+        } else {
+            closed[edge >>> 6] &= ~(1L << edge);
+        }
+        updateCost(edge);
+    }
+
+    public boolean isClosed(int edge) {
+        return (closed[edge >>> 6] & (1L << edge)) != 0;
+    }
+
+    /**
+     * The first edge from one node to another, or -1 if there is none.
+     */
+    public int findEdge(int fromNode, int toNode) {
+        checkNode(fromNode);
+        for (int e = offsets[fromNode]; e < offsets[fromNode + 1]; e++) {
+            if (target[e] == toNode) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    public void addListener(CostListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CostListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    public int getNumEdges() {
+        return target.length;
+    }
+
+    /**
+     * First out-edge of a node; its out-edges run up to firstEdge(node + 1).
+     */
+    public int firstEdge(int node) {
+        return offsets[node];
+    }
+
+    public int getSource(int edge) {
+        return source[edge];
+    }
+
+    public int getTarget(int edge) {
+        return target[edge];
+    }
+
+    public int getLanes(int edge) {
+        return lanes[edge];
+    }
+
+    public double getCost(int edge) {
+        return cost[edge];
+    }
+
+    // Works the node's expected wait out from its signal and passes it on to the edges into it
+    private boolean updateWait(int node) {
+        TrafficSignal ts = signals[node];
+        double w = 0;
+        if (ts != null) {
+            int[] t = ts.getTimers();
+            double stopped = t[0] + t[1];
+            double cycle = stopped + t[2];
+            w = cycle > 0 ? stopped * stopped / (2 * cycle) : 0;
+        }
+        if (w == wait[node]) {
+            return false;
+        }
+        wait[node] = w;
+        for (int i = inOffsets[node]; i < inOffsets[node + 1]; i++) {
+            updateCost(inEdges[i]);
+        }
+        return true;
+    }
+
+    private void updateCost(int edge) {
+        double old = cost[edge];
+        double now = isClosed(edge) ? Double.POSITIVE_INFINITY : travelTime[edge] + wait[target[edge]];
+        if (now == old) {
+            return;
+        }
+        cost[edge] = now;
+        for (CostListener listener : listeners) {
+            listener.costChanged(edge, old, now);
+        }
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= numNodes) {
+            throw new IllegalArgumentException("Node must be between 0 and " + (numNodes - 1) + ". Received(invalid): " + node);
+        }
+    }
+
+    private void checkEdge(int edge) {
+        if (edge < 0 || edge >= target.length) {
+            throw new IllegalArgumentException("Edge must be between 0 and " + (target.length - 1) + ". Received(invalid): " + edge);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which lanes have an intersection at which point along the road.
+ * The layout is one bitset per lane packed into a single long[]: bit i of a lane
+ * is set when intersection i exists on that lane. Interaction patterns use the same
+ * bit order, so a whole word of intersections can be checked with one AND.
+ * Layouts and patterns are shared by every tracker on the road and are not copied.
+ */
+public class RoadLayout {
+
+    // Layout used by trackers created without one: 3 lanes, 10 intersections on lanes 1 and 3
+    private static final RoadLayout STANDARD = standard(3, 10);
+
+    private final int numLanes;
+    private final int numIntersections;
+    private final int wordsPerLane;
+    private final long[] bits;
+    private long[] alternatingPattern; // created on first use, then shared
+    private long[] fullPattern; // likewise
+
+    public RoadLayout(int numLanes, int numIntersections) {
+        if (numLanes <= 0 || numIntersections <= 0) {
+            throw new IllegalArgumentException("Road must have at least one lane and one intersection. Received: "
+                    + numLanes + " lanes, " + numIntersections + " intersections");
+        }
+        this.numLanes = numLanes;
+        this.numIntersections = numIntersections;
+        this.wordsPerLane = words(numIntersections);
+        this.bits = new long[numLanes * wordsPerLane];
+    }
+
+    /**
+     * The 3-lane, 10-intersection road trackers use by default.
+     */
+    public static RoadLayout standard() {
+        return STANDARD;
+    }
+
+    /**
+     * A road where every lane except the middle ones has an intersection at every point,
+     * the same shape as the default layout at any size.
+     */
+    public static RoadLayout standard(int numLanes, int numIntersections) {
+        RoadLayout layout = new RoadLayout(numLanes, numIntersections);
+        for (int lane = 0; lane < numLanes; lane++) {
+            if (lane == 0 || lane == numLanes - 1) {
+                layout.setRange(lane, 0, numIntersections);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Number of 64-bit words in a bitset covering the given number of intersections.
+     */
+    public static int words(int numIntersections) {
+        return (numIntersections + 63) >>> 6;
+    }
+
+    public void setIntersection(int lane, int index, boolean present) {
+        checkLane(lane);
+        checkIndex(index);
+        int w = lane * wordsPerLane + (index >>> 6);
+        if (present) {
+            bits[w] |= 1L << index;
+        } else {
+            bits[w] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Marks intersections [from, to) on a lane as present.
+     */
+    public void setRange(int lane, int from, int to) {
+        checkLane(lane);
+        for (int i = from; i < to; ) {
+            int end = Math.min(to, (i | 63) + 1);
+            bits[lane * wordsPerLane + (i >>> 6)] |= mask(i, end);
+            i = end;
+        }
+    }
+
+    public boolean hasIntersection(int lane, int index) {
+        return (bits[lane * wordsPerLane + (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    /**
+     * Shared pattern that interacts with every other intersection (indices 0, 2, 4, ...).
+     * The array is shared by every caller and must not be modified.
+     */
+    public synchronized long[] alternatingPattern() {
+        if (alternatingPattern == null) {
+            long[] pattern = new long[wordsPerLane];
+            for (int w = 0; w < wordsPerLane; w++) {
+                pattern[w] = 0x5555555555555555L;
+            }
+            int tail = numIntersections & 63;
+            if (tail != 0) {
+                pattern[wordsPerLane - 1] &= mask(0, tail);
+            }
+            alternatingPattern = pattern;
+        }
+        return alternatingPattern;
+    }
+
+    /**
+     * Shared pattern that interacts with every intersection.
+     * The array is shared by every caller and must not be modified.
+     */
+    public synchronized long[] fullPattern() {
+        if (fullPattern == null) {
+            long[] pattern = new long[wordsPerLane];
+            for (int w = 0; w < wordsPerLane; w++) {
+                pattern[w] = -1L;
+            }
+            int tail = numIntersections & 63;
+            if (tail != 0) {
+                pattern[wordsPerLane - 1] &= mask(0, tail);
+            }
+            fullPattern = pattern;
+        }
+        return fullPattern;
+    }
+
+    /**
+     * Index of the first intersection in [from, to) that the pattern wants to use
+     * but that does not exist on the lane, or -1 if there is none.
+     */
+    public int firstMissing(int lane, long[] pattern, int from, int to) {
+        int base = lane * wordsPerLane;
+        for (int i = from; i < to; ) {
+            int end = Math.min(to, (i | 63) + 1);
+            int w = i >>> 6;
+            long missing = pattern[w] & ~bits[base + w] & mask(i, end);
+            if (missing != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(missing);
+            }
+            i = end;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks a pattern against every lane up front.
+     * @return for each lane, a bitset of the intersections the pattern would use but that
+     *         don't exist there, or null for a lane where every move is valid.
+     */
+    public long[][] findMissing(long[] pattern) {
+        long[][] missing = new long[numLanes][];
+        for (int lane = 0; lane < numLanes; lane++) {
+            int base = lane * wordsPerLane;
+            long[] laneMissing = null;
+            for (int w = 0; w < wordsPerLane; w++) {
+                long bad = pattern[w] & ~bits[base + w];
+                if (bad != 0) {
+                    if (laneMissing == null) {
+                        laneMissing = new long[wordsPerLane];
+                    }
+                    laneMissing[w] = bad;
+                }
+            }
+            missing[lane] = laneMissing;
+        }
+        return missing;
+    }
+
+    /**
+     * Lists every invalid lane/intersection combination of a pattern, one line each,
+     * using 1-based numbers like the tracker's messages. Stops after limit lines.
+     */
+    public List<String> describeMissing(long[] pattern, int limit) {
+        List<String> lines = new ArrayList<>();
+        long[][] missing = findMissing(pattern);
+        for (int lane = 0; lane < numLanes && lines.size() < limit; lane++) {
+            long[] laneMissing = missing[lane];
+            if (laneMissing == null) {
+                continue;
+            }
+            for (int w = 0; w < laneMissing.length && lines.size() < limit; w++) {
+                long bad = laneMissing[w];
+                while (bad != 0 && lines.size() < limit) {
+                    int index = (w << 6) + Long.numberOfTrailingZeros(bad);
+                    lines.add("Intersection " + (index + 1) + " does not exist on Lane " + (lane + 1));
+                    bad &= bad - 1;
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Number of intersections in [from, to) that the pattern uses and that exist on the lane.
+     */
+    public int countPassable(int lane, long[] pattern, int from, int to) {
+        int base = lane * wordsPerLane;
+        int count = 0;
+        for (int i = from; i < to; ) {
+            int end = Math.min(to, (i | 63) + 1);
+            int w = i >>> 6;
+            count += Long.bitCount(pattern[w] & bits[base + w] & mask(i, end));
+            i = end;
+        }
+        return count;
+    }
+
+    /**
+     * Number of intersections in [from, to) that the pattern uses.
+     */
+    public static int countSet(long[] pattern, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; ) {
+            int end = Math.min(to, (i | 63) + 1);
+            count += Long.bitCount(pattern[i >>> 6] & mask(i, end));
+            i = end;
+        }
+        return count;
+    }
+
+    public static boolean isSet(long[] pattern, int index) {
+        return (pattern[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public int getNumLanes() {
+        return numLanes;
+    }
+
+    public int getNumIntersections() {
+        return numIntersections;
+    }
+
+    // Bits [from, to) of the word holding 'from'; 'to' is at most the next word boundary
+    private static long mask(int from, int to) {
+        long high = (to & 63) == 0 ? -1L : (1L << to) - 1;
+        return high & (-1L << from);
+    }
+
+    private void checkLane(int lane) {
+        if (lane < 0 || lane >= numLanes) {
+            throw new IllegalArgumentException("Lane must be between 0 and " + (numLanes - 1) + ". Received(invalid): " + lane);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= numIntersections) {
+            throw new IllegalArgumentException("Intersection index must be between 0 and " + (numIntersections - 1)
+                    + ". Received(invalid): " + index);
+        }
+    }
+}
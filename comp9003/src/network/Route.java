@@ -0,0 +1,123 @@
+package network;
+
+/**
+ * A shortest path through a RoadGraph, as the nodes it visits and the edges between them.
+ * Routes are immutable and shared by every vehicle travelling between the same two nodes,
+ * so callers must not expect one object per vehicle.
+ */
+public final class Route {
+
+    private final int[] nodes;
+    private final int[] edges;
+    private final double cost;
+
+    Route(int[] nodes, int[] edges, double cost) {
+        this.nodes = nodes;
+        this.edges = edges;
+        this.cost = cost;
+    }
+
+    public int getOrigin() {
+        return nodes[0];
+    }
+
+    public int getDestination() {
+        return nodes[nodes.length - 1];
+    }
+
+    /**
+     * Number of nodes on the route, origin and destination included.
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    public int getNode(int i) {
+        return nodes[i];
+    }
+
+    /**
+     * Edge from node i to node i + 1.
+     */
+    public int getEdge(int i) {
+        return edges[i];
+    }
+
+    /**
+     * Expected travel time in seconds when the route was found.
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * The route as a road of its own for an IntersectionNetwork tracker: intersection i is
+     * node i of the route, and exists on the lanes the edge into it is open to (the
+     * origin on every lane). Used with RoadLayout.fullPattern(), a tracker then passes
+     * every node of the route in order.
+     */
+    public RoadLayout toLayout(RoadGraph graph, int numLanes) {
+        RoadLayout layout = new RoadLayout(numLanes, nodes.length);
+        for (int lane = 0; lane < numLanes; lane++) {
+            layout.setIntersection(lane, 0, true);
+            for (int i = 1; i < nodes.length; i++) {
+                layout.setIntersection(lane, i, lane < 32 && (graph.getLanes(edges[i - 1]) & 1 << lane) != 0);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * This route as far as node i, then rest from there on: the way a vehicle goes when
+     * it is re-routed at node i. The cost is counted as the graph has it now.
+     * @param rest a route whose origin is node i of this one.
+     */
+    public Route detour(int i, Route rest, RoadGraph graph) {
+        if (i < 0 || i >= nodes.length || rest.getOrigin() != nodes[i]) {
+            throw new IllegalArgumentException("Detour must start at a node of the route. Received(invalid): node "
+                    + rest.getOrigin() + " at " + i);
+        }
+        int[] joinedNodes = new int[i + rest.nodes.length];
+        int[] joinedEdges = new int[joinedNodes.length - 1];
+        System.arraycopy(nodes, 0, joinedNodes, 0, i);
+        System.arraycopy(rest.nodes, 0, joinedNodes, i, rest.nodes.length);
+        System.arraycopy(edges, 0, joinedEdges, 0, i);
+        System.arraycopy(rest.edges, 0, joinedEdges, i, rest.edges.length);
+        double joinedCost = rest.cost;
+        for (int e = 0; e < i; e++) {
+            joinedCost += graph.getCost(edges[e]);
+        }
+        return new Route(joinedNodes, joinedEdges, joinedCost);
+    }
+
+    /**
+     * The route from origin along the given edges, each starting where the one before it
+     * ends, e.g. to restore a route saved as its edges. The cost is counted as the graph
+     * has it now.
+     */
+    public static Route along(RoadGraph graph, int origin, int[] edges) {
+        int[] nodes = new int[edges.length + 1];
+        nodes[0] = origin;
+        double cost = 0;
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i] < 0 || edges[i] >= graph.getNumEdges() || graph.getSource(edges[i]) != nodes[i]) {
+                throw new IllegalArgumentException("Edge " + edges[i] + " does not leave node " + nodes[i]);
+            }
+            nodes[i + 1] = graph.getTarget(edges[i]);
+            cost += graph.getCost(edges[i]);
+        }
+        return new Route(nodes, edges.clone(), cost);
+    }
+
+    /**
+     * The route as an IntersectionNetwork interaction pattern, for a graph built with
+     * RoadGraph.fromLayout: bit i is set for every intersection the route passes.
+     */
+    public long[] toPattern(int numIntersections) {
+        long[] pattern = new long[RoadLayout.words(numIntersections)];
+        for (int node : nodes) {
+            pattern[node >>> 6] |= 1L << node;
+        }
+        return pattern;
+    }
+}
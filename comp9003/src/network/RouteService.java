@@ -0,0 +1,238 @@
+package network;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Answers origin/destination route queries on a RoadGraph from a bounded cache.
+ *
+ * A query runs Dijkstra once for its origin and lane mask and keeps the whole
+ * shortest-path tree, so every later query from that origin, to any destination, is a
+ * walk up the tree, and each Route is built once and then shared. Trees are kept in
+ * least-recently-used order and the oldest is dropped when the cache is full.
+ *
+ * When an edge's cost changes the graph tells the service, and each cached tree is
+ * checked in constant time: a dearer or closed edge only matters to a tree that uses it,
+ * a cheaper or reopened one only to a tree it now gives a strictly shorter way into the
+ * edge's end. Only trees that fail the check are dropped; the rest keep serving.
+ * Queries may come from several threads, but not while the graph is being changed.
+ */
+public class RouteService implements RoadGraph.CostListener {
+
+    private final RoadGraph graph;
+    private final LinkedHashMap<Long, Tree> trees;
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    /**
+     * @param capacity most shortest-path trees to keep, one per origin and lane mask.
+     */
+    public RouteService(RoadGraph graph, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive. Received: " + capacity);
+        }
+        this.graph = graph;
+        this.trees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Tree> eldest) {
+                return size() > capacity;
+            }
+        };
+        graph.addListener(this);
+    }
+
+    /**
+     * Cheapest route between two nodes over edges open to at least one of the given lanes.
+     * @param laneMask lanes the vehicle may use, bit i for lane i; -1 for any.
+     * @return the route, or null if the destination cannot be reached.
+     */
+    public synchronized Route route(int origin, int destination, int laneMask) {
+        if (origin < 0 || origin >= graph.getNumNodes() || destination < 0 || destination >= graph.getNumNodes()) {
+            throw new IllegalArgumentException("Nodes must be between 0 and " + (graph.getNumNodes() - 1)
+                    + ". Received(invalid): " + origin + ", " + destination);
+        }
+        Long key = (long) origin << 32 | (laneMask & 0xFFFFFFFFL);
+        Tree tree = trees.get(key);
+        if (tree == null) {
+            misses++;
+            tree = new Tree(origin, laneMask);
+            trees.put(key, tree);
+        } else {
+            hits++;
+        }
+        return tree.route(destination);
+    }
+
+    /**
+     * Cheapest route between two nodes using any lane.
+     */
+    public Route route(int origin, int destination) {
+        return route(origin, destination, -1);
+    }
+
+    @Override
+    public synchronized void costChanged(int edge, double oldCost, double newCost) {
+        int from = graph.getSource(edge);
+        int to = graph.getTarget(edge);
+        int lanes = graph.getLanes(edge);
+        Iterator<Tree> it = trees.values().iterator();
+        while (it.hasNext()) {
+            Tree tree = it.next();
+            if ((lanes & tree.laneMask) == 0) {
+                continue;
+            }
+            boolean stale = newCost > oldCost
+                    ? tree.parentEdge[to] == edge
+                    : tree.dist[from] + newCost < tree.dist[to];
+            if (stale) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drops every cached tree.
+     */
+    public synchronized void clear() {
+        trees.clear();
+    }
+
+    /**
+     * Stops listening to the graph, so the service can be garbage collected before it.
+     */
+    public void close() {
+        graph.removeListener(this);
+    }
+
+    public synchronized int size() {
+        return trees.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    // One origin's shortest-path tree, with the routes handed out from it so far
+    private final class Tree {
+
+        final int laneMask;
+        final double[] dist;
+        final int[] parentEdge;
+        final Route[] routes;
+
+        Tree(int origin, int laneMask) {
+            int n = graph.getNumNodes();
+            this.laneMask = laneMask;
+            dist = new double[n];
+            parentEdge = new int[n];
+            routes = new Route[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            Arrays.fill(parentEdge, -1);
+            dist[origin] = 0;
+            search(origin);
+        }
+
+        // Dijkstra with a binary heap that may hold stale entries, skipped when popped
+        private void search(int origin) {
+            double[] heapDist = new double[16];
+            int[] heapNode = new int[16];
+            int size = 0;
+            heapDist[0] = 0;
+            heapNode[0] = origin;
+            size++;
+            boolean[] done = new boolean[dist.length];
+            while (size > 0) {
+                int u = heapNode[0];
+                double d = heapDist[0];
+                size--;
+                // sift the last entry down from the root
+                double lastDist = heapDist[size];
+                int lastNode = heapNode[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && heapDist[child + 1] < heapDist[child]) {
+                        child++;
+                    }
+                    if (heapDist[child] >= lastDist) {
+                        break;
+                    }
+                    heapDist[i] = heapDist[child];
+                    heapNode[i] = heapNode[child];
+                    i = child;
+                }
+                heapDist[i] = lastDist;
+                heapNode[i] = lastNode;
+
+                if (done[u] || d > dist[u]) {
+                    continue;
+                }
+                done[u] = true;
+                for (int e = graph.firstEdge(u), end = graph.firstEdge(u + 1); e < end; e++) {
+                    if ((graph.getLanes(e) & laneMask) == 0) {
+                        continue;
+                    }
+                    int v = graph.getTarget(e);
+                    double nd = d + graph.getCost(e);
+                    if (nd < dist[v]) {
+                        dist[v] = nd;
+                        parentEdge[v] = e;
+                        if (size == heapDist.length) {
+                            heapDist = Arrays.copyOf(heapDist, size * 2);
+                            heapNode = Arrays.copyOf(heapNode, size * 2);
+                        }
+                        // sift up from the end
+                        int j = size++;
+                        while (j > 0 && heapDist[(j - 1) / 2] > nd) {
+                            heapDist[j] = heapDist[(j - 1) / 2];
+                            heapNode[j] = heapNode[(j - 1) / 2];
+                            j = (j - 1) / 2;
+                        }
+                        heapDist[j] = nd;
+                        heapNode[j] = v;
+                    }
+                }
+            }
+        }
+
+        Route route(int destination) {
+            if (dist[destination] == Double.POSITIVE_INFINITY) {
+                return null;
+            }
+            Route route = routes[destination];
+            if (route == null) {
+                int length = 1;
+                for (int v = destination; parentEdge[v] >= 0; v = graph.getSource(parentEdge[v])) {
+                    length++;
+                }
+                int[] nodes = new int[length];
+                int[] edges = new int[length - 1];
+                int v = destination;
+                for (int i = length - 1; i > 0; i--) {
+                    nodes[i] = v;
+                    edges[i - 1] = parentEdge[v];
+                    v = graph.getSource(parentEdge[v]);
+                }
+                nodes[0] = v;
+                route = new Route(nodes, edges, dist[destination]);
+                routes[destination] = route;
+            }
+            return route;
+        }
+    }
+}
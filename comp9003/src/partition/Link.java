@@ -0,0 +1,52 @@
+package partition;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A two-way byte stream between the coordinator and one segment worker, whatever
+ * carries it. Both directions are buffered; writers flush at the end of each message.
+ */
+public final class Link implements Closeable {
+
+    private static final int BUFFER = 1 << 16;
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Closeable resource;
+
+    /**
+     * @param resource closed with the link, e.g. the socket both streams belong to.
+     */
+    public Link(InputStream in, OutputStream out, Closeable resource) {
+        this.in = new DataInputStream(new BufferedInputStream(in, BUFFER));
+        this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER));
+        this.resource = resource;
+    }
+
+    public DataInputStream getInput() {
+        return in;
+    }
+
+    public DataOutputStream getOutput() {
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            in.close();
+            if (resource != null) {
+                resource.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package partition;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * Runs every segment worker as a thread of this JVM, connected through in-memory pipes.
+ * It exercises the same protocol as worker processes, so a partitioned run can be
+ * checked on one box without starting any.
+ */
+public class LocalTransport implements Transport {
+
+    private static final int PIPE_BUFFER = 1 << 20;
+
+    private Thread[] workers = new Thread[0];
+
+    @Override
+    public Link[] start(int segments) throws IOException {
+        Link[] links = new Link[segments];
+        workers = new Thread[segments];
+        for (int i = 0; i < segments; i++) {
+            PipedOutputStream toWorker = new PipedOutputStream();
+            PipedInputStream workerIn = new PipedInputStream(toWorker, PIPE_BUFFER);
+            PipedOutputStream workerOut = new PipedOutputStream();
+            PipedInputStream fromWorker = new PipedInputStream(workerOut, PIPE_BUFFER);
+            Link workerLink = new Link(workerIn, workerOut, null);
+            workers[i] = new Thread(() -> {
+                try (Link link = workerLink) {
+                    SegmentWorker.serve(link);
+                } catch (IOException e) {
+                    System.err.println(Thread.currentThread().getName() + " failed: " + e.getMessage());
+                }
+            }, "segment-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+            links[i] = new Link(fromWorker, toWorker, null);
+        }
+        return links;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for segment workers");
+        }
+    }
+}
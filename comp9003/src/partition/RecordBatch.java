@@ -0,0 +1,47 @@
+package partition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Records collected for one message: encoded as they are added, counted, and sent in one
+ * write behind the message type and the count once the batch is complete.
+ */
+public final class RecordBatch {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 12);
+    private final DataOutputStream data = new DataOutputStream(bytes);
+    private int count;
+
+    /**
+     * Starts a new record.
+     * @return where to write it.
+     */
+    public DataOutputStream next() {
+        count++;
+        return data;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Bytes encoded so far, for callers that send large batches in parts.
+     */
+    public int bytes() {
+        return bytes.size();
+    }
+
+    /**
+     * Writes the message type, the record count and the records, then empties the batch.
+     */
+    public void sendTo(DataOutputStream out, byte message) throws IOException {
+        out.writeByte(message);
+        out.writeInt(count);
+        bytes.writeTo(out);
+        bytes.reset();
+        count = 0;
+    }
+}
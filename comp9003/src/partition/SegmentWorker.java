@@ -0,0 +1,209 @@
+package partition;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import report.NullReporter;
+import vehicle.VehicleStore;
+
+/**
+ * Owns the vehicles on one segment of the road, [lo, hi), in every fleet of a
+ * partitioned run, and moves them when the coordinator says so. After each move the
+ * vehicles that left the segment are sent back to the coordinator, which hands them
+ * to the segments they entered before the next move.
+ *
+ * Messages from the coordinator, each starting with its type byte:
+ *   SEGMENT lo hi          the segment this worker owns; always first
+ *   FLEET interval         a new fleet with the given time interval, numbered in order
+ *   ADD n {fleet key type id}        new vehicles, at rest at the start of the road
+ *   ADVANCE n {steps}      fast-forward each fleet; the reply is HANDOFF with the
+ *                          vehicles now outside the segment
+ *   HANDOFF n {record}     vehicles that entered the segment (see VehicleRecord)
+ *   POSITIONS              reply, per fleet: n {key position} in key order
+ *   STOP                   reply STOP and exit
+ * The worker also exits quietly if the link closes between two messages.
+ */
+public final class SegmentWorker {
+
+    public static final byte SEGMENT = 1;
+    public static final byte FLEET = 2;
+    public static final byte ADD = 3;
+    public static final byte ADVANCE = 4;
+    public static final byte HANDOFF = 5;
+    public static final byte POSITIONS = 6;
+    public static final byte STOP = 7;
+
+    private final List<Shard> fleets = new ArrayList<>();
+    private final VehicleRecord record = new VehicleRecord();
+    private final RecordBatch leaving = new RecordBatch();
+    private double lo;
+    private double hi;
+
+    private SegmentWorker() {
+    }
+
+    /**
+     * Worker process: java partition.SegmentWorker <port> <segment>
+     * Connects to the coordinator on the loopback port and serves it until told to stop.
+     */
+    public static void main(String[] args) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            socket.setTcpNoDelay(true);
+            try (Link link = new Link(socket.getInputStream(), socket.getOutputStream(), socket)) {
+                link.getOutput().writeInt(Integer.parseInt(args[1]));
+                link.getOutput().flush();
+                serve(link);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Segment worker " + (args.length > 1 ? args[1] : "?") + " failed: " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Answers the coordinator's messages on the link until STOP.
+     */
+    public static void serve(Link link) throws IOException {
+        new SegmentWorker().loop(link.getInput(), link.getOutput());
+    }
+
+    private void loop(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            int message = in.read();
+            if (message < 0) {
+                return; // the coordinator went away between messages
+            }
+            switch (message) {
+                case SEGMENT:
+                    lo = in.readDouble();
+                    hi = in.readDouble();
+                    break;
+                case FLEET:
+                    VehicleStore store = new VehicleStore(1024, in.readDouble());
+                    store.setReporter(NullReporter.INSTANCE);
+                    fleets.add(new Shard(store));
+                    break;
+                case ADD:
+                    for (int n = in.readInt(); n > 0; n--) {
+                        Shard shard = fleet(in.readInt());
+                        int key = in.readInt();
+                        byte type = in.readByte();
+                        shard.added(key, shard.store.add(type, in.readUTF()));
+                    }
+                    break;
+                case ADVANCE:
+                    advance(in);
+                    leaving.sendTo(out, HANDOFF);
+                    out.flush();
+                    break;
+                case HANDOFF:
+                    for (int n = in.readInt(); n > 0; n--) {
+                        record.read(in);
+                        Shard shard = fleet(record.getFleet());
+                        shard.added(record.getKey(), record.restoreInto(shard.store));
+                    }
+                    break;
+                case POSITIONS:
+                    for (Shard shard : fleets) {
+                        shard.writePositions(out);
+                    }
+                    out.flush();
+                    break;
+                case STOP:
+                    out.writeByte(STOP);
+                    out.flush();
+                    return;
+                default:
+                    throw new IOException("Unknown message type " + message);
+            }
+        }
+    }
+
+    private void advance(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count != fleets.size()) {
+            throw new IOException("ADVANCE for " + count + " fleets, worker has " + fleets.size());
+        }
+        for (int f = 0; f < count; f++) {
+            long steps = in.readLong();
+            Shard shard = fleets.get(f);
+            shard.store.fastForward(steps);
+            shard.removeLeaving(f);
+        }
+    }
+
+    private Shard fleet(int f) throws IOException {
+        if (f < 0 || f >= fleets.size()) {
+            throw new IOException("Unknown fleet " + f);
+        }
+        return fleets.get(f);
+    }
+
+    // The vehicles of one fleet on this segment, with the key of each slot alongside
+    private final class Shard {
+
+        final VehicleStore store;
+        int[] keys = new int[1024];
+        int[] slots = new int[64];
+
+        Shard(VehicleStore store) {
+            this.store = store;
+        }
+
+        void added(int key, int slot) {
+            if (slot == keys.length) {
+                keys = Arrays.copyOf(keys, slot * 2);
+            }
+            keys[slot] = key;
+        }
+
+        // Moves every vehicle outside [lo, hi) into the leaving batch
+        void removeLeaving(int fleet) throws IOException {
+            int n = store.size();
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                double p = store.getCurrentPosition(i);
+                if (p >= lo && p < hi) {
+                    continue;
+                }
+                record.load(fleet, keys[i], store, i);
+                record.write(leaving.next());
+                if (count == slots.length) {
+                    slots = Arrays.copyOf(slots, count * 2);
+                }
+                slots[count++] = i;
+            }
+            if (count == 0) {
+                return;
+            }
+            store.removeAll(slots, count);
+            int kept = slots[0];
+            for (int i = slots[0], next = 0; i < n; i++) {
+                if (next < count && slots[next] == i) {
+                    next++;
+                } else {
+                    keys[kept++] = keys[i];
+                }
+            }
+        }
+
+        void writePositions(DataOutputStream out) throws IOException {
+            int n = store.size();
+            long[] order = new long[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = (long) keys[i] << 32 | i;
+            }
+            Arrays.sort(order);
+            out.writeInt(n);
+            for (long entry : order) {
+                out.writeInt((int) (entry >>> 32));
+                out.writeDouble(store.getCurrentPosition((int) entry));
+            }
+        }
+    }
+}
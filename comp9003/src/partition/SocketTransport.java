@@ -0,0 +1,95 @@
+package partition;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts every segment worker as a separate JVM on this machine, each with its own heap,
+ * and connects to them over loopback sockets. The workers run SegmentWorker's main with
+ * this JVM's class path; JVM options for them (a larger heap, say) can be passed in the
+ * sim.workerOpts system property, separated by spaces.
+ */
+public class SocketTransport implements Transport {
+
+    private static final int CONNECT_TIMEOUT_MS = 60_000;
+    private static final long EXIT_TIMEOUT_S = 30;
+
+    private final List<Process> processes = new ArrayList<>();
+
+    @Override
+    public Link[] start(int segments) throws IOException {
+        Link[] links = new Link[segments];
+        try (ServerSocket server = new ServerSocket(0, segments, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT_MS);
+            for (int i = 0; i < segments; i++) {
+                processes.add(launch(server.getLocalPort(), i));
+            }
+            for (int i = 0; i < segments; i++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Link link = new Link(socket.getInputStream(), socket.getOutputStream(), socket);
+                int segment = link.getInput().readInt(); // workers connect in any order
+                if (segment < 0 || segment >= segments || links[segment] != null) {
+                    link.close();
+                    throw new IOException("Unexpected connection from segment " + segment);
+                }
+                links[segment] = link;
+            }
+        } catch (SocketTimeoutException e) {
+            throw new IOException("Segment workers did not connect within " + CONNECT_TIMEOUT_MS / 1000 + " s");
+        } catch (IOException e) {
+            for (Link link : links) {
+                if (link != null) link.close();
+            }
+            throw e;
+        }
+        return links;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Process process : processes) {
+                if (!process.waitFor(EXIT_TIMEOUT_S, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    throw new IOException("Segment worker " + process.pid() + " did not exit");
+                }
+                if (process.exitValue() != 0) {
+                    throw new IOException("Segment worker " + process.pid() + " exited with " + process.exitValue());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for segment workers");
+        } finally {
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static Process launch(int port, int segment) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        String options = System.getProperty("sim.workerOpts", "").trim();
+        if (!options.isEmpty()) {
+            command.addAll(List.of(options.split("\\s+")));
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SegmentWorker.class.getName());
+        command.add(Integer.toString(port));
+        command.add(Integer.toString(segment));
+        return new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+}
@@ -0,0 +1,33 @@
+package partition;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Starts the segment workers of a partitioned run and connects the coordinator to them.
+ * Workers only ever talk to the coordinator, so a transport is just a way to get one
+ * Link per worker; closing the transport waits for the workers to finish.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Starts one worker per segment, each running SegmentWorker.serve.
+     * @return a link to each worker, in segment order.
+     */
+    Link[] start(int segments) throws IOException;
+
+    /**
+     * "socket" for worker processes on this machine connected over loopback sockets,
+     * "local" for worker threads in this JVM connected through in-memory pipes.
+     */
+    static Transport create(String name) {
+        switch (name) {
+            case "socket":
+                return new SocketTransport();
+            case "local":
+                return new LocalTransport();
+            default:
+                throw new IllegalArgumentException("Unknown transport \"" + name + "\", expected socket or local");
+        }
+    }
+}
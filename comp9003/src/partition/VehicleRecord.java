@@ -0,0 +1,74 @@
+package partition;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import vehicle.VehicleStore;
+
+/**
+ * The full state of one vehicle on its way from one segment to another, reused for
+ * every record of a batch. The key is the vehicle's slot in the single-process fleet,
+ * which fixes the order results are summed in.
+ */
+public final class VehicleRecord {
+
+    private int fleet;
+    private int key;
+    private byte type;
+    private String id;
+    private double position;
+    private double velocity;
+    private int lane;
+    private int moveCount;
+
+    public void read(DataInput in) throws IOException {
+        fleet = in.readInt();
+        key = in.readInt();
+        type = in.readByte();
+        id = in.readUTF();
+        position = in.readDouble();
+        velocity = in.readDouble();
+        lane = in.readInt();
+        moveCount = in.readInt();
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(fleet);
+        out.writeInt(key);
+        out.writeByte(type);
+        out.writeUTF(id);
+        out.writeDouble(position);
+        out.writeDouble(velocity);
+        out.writeInt(lane);
+        out.writeInt(moveCount);
+    }
+
+    public int getFleet() {
+        return fleet;
+    }
+
+    public int getKey() {
+        return key;
+    }
+
+    public double getPosition() {
+        return position;
+    }
+
+    // Copies the vehicle in a slot of a store
+    void load(int fleet, int key, VehicleStore store, int slot) {
+        this.fleet = fleet;
+        this.key = key;
+        type = store.getTypeCode(slot);
+        id = store.getVehicleID(slot);
+        position = store.getCurrentPosition(slot);
+        velocity = store.getVelocity(slot);
+        lane = store.getCurrentLane(slot);
+        moveCount = store.getMoveCount(slot);
+    }
+
+    // Appends the vehicle to a store, returning its slot
+    int restoreInto(VehicleStore store) {
+        return store.restore(type, id, position, velocity, lane, moveCount);
+    }
+}
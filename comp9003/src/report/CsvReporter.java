@@ -0,0 +1,144 @@
+package report;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes records as CSV rows through a FileChannel.
+ * Rows are encoded straight into a large direct buffer, which is handed to the channel
+ * only when it fills up, so a run with millions of records costs few system calls.
+ *
+ * Row layout:
+ *   vehicle,&lt;id&gt;,&lt;lane&gt;,&lt;position&gt;,&lt;velocity&gt;
+ *   signal,&lt;id&gt;,&lt;state&gt;,&lt;timer&gt;
+ *   message,"&lt;text&gt;"
+ */
+public class CsvReporter implements SimulationReporter {
+
+    public static final int DEFAULT_BUFFER = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    public CsvReporter(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER);
+    }
+
+    public CsvReporter(Path file, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        put("kind,id,value1,value2,value3\n");
+    }
+
+    @Override
+    public void vehicleState(String vehicleID, int lane, double position, double velocity) {
+        put("vehicle,");
+        putField(vehicleID);
+        put(',');
+        put(Integer.toString(lane));
+        put(',');
+        put(Double.toString(position));
+        put(',');
+        put(Double.toString(velocity));
+        put('\n');
+    }
+
+    @Override
+    public void signalState(String signalID, String state, int timer) {
+        put("signal,");
+        putField(signalID);
+        put(',');
+        put(state);
+        put(',');
+        put(Integer.toString(timer));
+        put('\n');
+    }
+
+    @Override
+    public void message(String line) {
+        put("message,");
+        putQuoted(line);
+        put('\n');
+    }
+
+    @Override
+    public void flush() {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // IDs are written bare unless they contain characters that need quoting
+    private void putField(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                putQuoted(value);
+                return;
+            }
+        }
+        put(value);
+    }
+
+    private void putQuoted(String value) {
+        put('"');
+        put(value.replace("\"", "\"\""));
+        put('"');
+    }
+
+    private void put(char c) {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) c);
+    }
+
+    private void put(String s) {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                putBytes(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    private void putBytes(byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package report;
+
+/**
+ * Drops every record. Use it when only the final numbers matter.
+ */
+public final class NullReporter implements SimulationReporter {
+
+    public static final NullReporter INSTANCE = new NullReporter();
+
+    private NullReporter() {
+    }
+
+    @Override
+    public void vehicleState(String vehicleID, int lane, double position, double velocity) {
+    }
+
+    @Override
+    public void signalState(String signalID, String state, int timer) {
+    }
+
+    @Override
+    public void message(String line) {
+    }
+
+    @Override
+    public void flush() {
+    }
+}
@@ -0,0 +1,66 @@
+package report;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where vehicles, signals and intersection trackers send their output.
+ * Implementations are not required to be thread-safe; the tick engines only
+ * report from the thread that drives the simulation.
+ */
+public interface SimulationReporter extends AutoCloseable {
+
+    /**
+     * State of one vehicle, e.g. on its second move or at the end of a run.
+     */
+    void vehicleState(String vehicleID, int lane, double position, double velocity);
+
+    /**
+     * State of one traffic signal and the duration of that state in seconds.
+     */
+    void signalState(String signalID, String state, int timer);
+
+    /**
+     * A free-form line of text, such as a progress marker or a status block line.
+     */
+    void message(String line);
+
+    /**
+     * Pushes anything buffered to the underlying output.
+     */
+    void flush();
+
+    @Override
+    default void close() {
+        flush();
+    }
+
+    /**
+     * Reporter that prints every record to System.out as soon as it is made,
+     * matching what the simulation printed before reporters existed.
+     */
+    static SimulationReporter console() {
+        return TextReporter.CONSOLE;
+    }
+
+    /**
+     * Builds a reporter from a short description:
+     * "none" drops everything, "console" prints immediately, "text" prints to
+     * System.out in large batches, and "csv:&lt;path&gt;" writes CSV rows to a file.
+     */
+    static SimulationReporter fromSpec(String spec) throws IOException {
+        if (spec.equals("none")) {
+            return NullReporter.INSTANCE;
+        }
+        if (spec.equals("console")) {
+            return console();
+        }
+        if (spec.equals("text")) {
+            return new TextReporter(System.out, TextReporter.DEFAULT_BATCH);
+        }
+        if (spec.startsWith("csv:")) {
+            return new CsvReporter(Path.of(spec.substring(4)));
+        }
+        throw new IllegalArgumentException("Unknown reporter \"" + spec + "\"; use none, console, text or csv:<path>");
+    }
+}
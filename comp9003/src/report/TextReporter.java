@@ -0,0 +1,66 @@
+package report;
+
+import java.io.PrintStream;
+import java.util.Formatter;
+
+/**
+ * Formats records as human-readable lines and writes them in batches.
+ * Lines are collected in one reusable buffer through one reusable Formatter, and the
+ * stream is only touched once the buffer passes the batch size or flush is called,
+ * instead of taking the stream's lock for every printf.
+ */
+public class TextReporter implements SimulationReporter {
+
+    public static final int DEFAULT_BATCH = 1 << 16;
+
+    // Unbatched reporter on System.out; a batch size of 0 writes every record straight away
+    static final TextReporter CONSOLE = new TextReporter(System.out, 0);
+
+    private final PrintStream out;
+    private final int batchSize;
+    private final StringBuilder buffer = new StringBuilder();
+    private final Formatter formatter = new Formatter(buffer);
+
+    /**
+     * @param out where lines are written.
+     * @param batchSize characters to collect before writing; 0 writes every record immediately.
+     */
+    public TextReporter(PrintStream out, int batchSize) {
+        this.out = out;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void vehicleState(String vehicleID, int lane, double position, double velocity) {
+        formatter.format("Vehicle %s: lane %d, current position %.2f, velocity %.2f\n",
+                vehicleID, lane, position, velocity);
+        written();
+    }
+
+    @Override
+    public void signalState(String signalID, String state, int timer) {
+        formatter.format("Signal %s: %s (%ds)%n", signalID, state, timer);
+        written();
+    }
+
+    @Override
+    public void message(String line) {
+        buffer.append(line).append(System.lineSeparator());
+        written();
+    }
+
+    @Override
+    public void flush() {
+        if (buffer.length() > 0) {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+        out.flush();
+    }
+
+    private void written() {
+        if (buffer.length() >= batchSize) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package signal;
+
+import java.io.IOException;
+import java.util.Arrays;
+import checkpoint.SnapshotInput;
+import checkpoint.SnapshotOutput;
+
+/**
+ * Where traffic signals stand along the road.
+ * Each placement is a stop line at a road position, shared by every lane. Stop lines
+ * are kept sorted by position, so the first line ahead of any point is found by binary
+ * search, and a vehicle that remembers the index of its next line only ever has to
+ * move that index forward.
+ */
+public class SignalPlan {
+
+    private double[] positions = new double[8];
+    private TrafficSignal[] signals = new TrafficSignal[8];
+    private int size;
+    private int modCount; // bumped whenever a line is placed
+
+    /**
+     * Puts a stop line for the signal at the given position. A signal may control several lines.
+     */
+    public void place(TrafficSignal ts, double position) {
+        if (Double.isNaN(position) || Double.isInfinite(position)) {
+            throw new IllegalArgumentException("Invalid signal position: " + position);
+        }
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            signals = Arrays.copyOf(signals, size * 2);
+        }
+        // after any line already at this position, so placement order breaks ties
+        int at = nextAt(Math.nextUp(position));
+        System.arraycopy(positions, at, positions, at + 1, size - at);
+        System.arraycopy(signals, at, signals, at + 1, size - at);
+        positions[at] = position;
+        signals[at] = ts;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Index of the first stop line at or beyond the given position, or size() if there is none.
+     */
+    public int nextAt(double position) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (positions[mid] < position) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public double getPosition(int line) {
+        checkLine(line);
+        return positions[line];
+    }
+
+    public TrafficSignal getSignal(int line) {
+        checkLine(line);
+        return signals[line];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Changes whenever a line is placed, so callers caching line indexes know to look them up again.
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Writes every stop line (signal ID and position) to a checkpoint.
+     */
+    public void writeSnapshot(SnapshotOutput out) throws IOException {
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putString(signals[i].getSignalID());
+            out.putDouble(positions[i]);
+        }
+    }
+
+    /**
+     * Rebuilds a plan written by writeSnapshot; its signals must already be in the registry.
+     */
+    public static SignalPlan readSnapshot(SnapshotInput in, SignalRegistry registry) throws IOException {
+        int size = in.getInt();
+        if (size < 0) {
+            throw new IOException("Corrupt signal plan snapshot: " + size + " lines");
+        }
+        SignalPlan plan = new SignalPlan();
+        for (int i = 0; i < size; i++) {
+            String id = in.getString();
+            TrafficSignal ts = registry.lookup(id);
+            if (ts == null) {
+                throw new IOException("Corrupt signal plan snapshot: unknown signal " + id);
+            }
+            plan.place(ts, in.getDouble());
+        }
+        return plan;
+    }
+
+    private void checkLine(int line) {
+        if (line < 0 || line >= size) {
+            throw new IndexOutOfBoundsException("Line " + line + " out of range, size " + size);
+        }
+    }
+}
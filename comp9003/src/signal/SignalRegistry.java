@@ -0,0 +1,145 @@
+package signal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import exception.InvalidSignalIDException;
+import report.SimulationReporter;
+
+/**
+ * Index of traffic signals by ID.
+ * Lookups are O(1) and safe to run concurrently with registration. Signals are held
+ * through weak references, so a signal nobody else refers to drops out on its own;
+ * deregister removes one explicitly. Each simulation can use its own registry so
+ * independent scenarios never see each other's signals.
+ */
+public class SignalRegistry {
+
+    private static final SignalRegistry GLOBAL = new SignalRegistry();
+
+    private final ConcurrentHashMap<String, Entry> signals = new ConcurrentHashMap<>();
+    private final ReferenceQueue<TrafficSignal> collected = new ReferenceQueue<>();
+    private final AtomicLong registrations = new AtomicLong();
+
+    /**
+     * Registry used by signals created without one.
+     */
+    public static SignalRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Adds a signal under its ID.
+     * @throws InvalidSignalIDException if a live signal with the same ID is already registered.
+     */
+    public void register(TrafficSignal ts) throws InvalidSignalIDException {
+        expungeCollected();
+        String id = ts.getSignalID();
+        Entry entry = new Entry(ts, collected, id, registrations.getAndIncrement());
+        while (true) {
+            Entry existing = signals.putIfAbsent(id, entry);
+            if (existing == null) {
+                return;
+            }
+            if (existing.get() != null) {
+                throw new InvalidSignalIDException("Signal ID \"" + id + "\" is already in use");
+            }
+            // the previous holder of this ID was collected but not expunged yet
+            if (signals.replace(id, existing, entry)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the signal registered under the given ID, or null if there is none.
+     */
+    public TrafficSignal lookup(String signalID) {
+        Entry entry = signals.get(signalID);
+        return entry == null ? null : entry.get();
+    }
+
+    /**
+     * Removes the given signal. Does nothing if another signal holds its ID.
+     * @return true if the signal was registered here.
+     */
+    public boolean deregister(TrafficSignal ts) {
+        Entry entry = signals.get(ts.getSignalID());
+        return entry != null && entry.get() == ts && signals.remove(ts.getSignalID(), entry);
+    }
+
+    /**
+     * Removes the signal registered under the given ID.
+     * @return the removed signal, or null if there was none.
+     */
+    public TrafficSignal deregister(String signalID) {
+        Entry entry = signals.remove(signalID);
+        return entry == null ? null : entry.get();
+    }
+
+    /**
+     * Number of registered signals, including any collected but not yet expunged.
+     */
+    public int size() {
+        expungeCollected();
+        return signals.size();
+    }
+
+    /**
+     * Live signals in registration order.
+     */
+    public List<TrafficSignal> snapshot() {
+        expungeCollected();
+        List<Entry> entries = new ArrayList<>(signals.values());
+        entries.sort(Comparator.comparingLong(e -> e.order));
+        List<TrafficSignal> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            TrafficSignal ts = entry.get();
+            if (ts != null) {
+                result.add(ts);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Display all signals' status
+     */
+    public void showTrafficSignal() {
+        showTrafficSignal(SimulationReporter.console());
+    }
+
+    /**
+     * Reports all signals' status in registration order.
+     */
+    public void showTrafficSignal(SimulationReporter reporter) {
+        for (TrafficSignal ts : snapshot()) {
+            ts.report(reporter);
+        }
+        reporter.flush();
+    }
+
+    private void expungeCollected() {
+        Reference<? extends TrafficSignal> ref;
+        while ((ref = collected.poll()) != null) {
+            Entry entry = (Entry) ref;
+            signals.remove(entry.id, entry);
+        }
+    }
+
+    private static final class Entry extends WeakReference<TrafficSignal> {
+        final String id;
+        final long order;
+
+        Entry(TrafficSignal ts, ReferenceQueue<TrafficSignal> queue, String id, long order) {
+            super(ts, queue);
+            this.id = id;
+            this.order = order;
+        }
+    }
+}
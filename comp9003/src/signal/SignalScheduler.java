@@ -0,0 +1,256 @@
+package signal;
+
+import java.io.IOException;
+import java.util.Arrays;
+import checkpoint.SnapshotInput;
+import checkpoint.SnapshotOutput;
+import exception.InvalidSignalIDException;
+
+/**
+ * Discrete-event scheduler for traffic signals.
+ * Signals sit in a binary min-heap keyed by the time their current state runs out,
+ * so advancing the clock only touches signals whose timer has actually expired.
+ * When nothing is due, advancing costs a single comparison against the heap root.
+ * Times are in milliseconds since the scheduler was created.
+ */
+public class SignalScheduler {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private TrafficSignal[] heap;
+    private long[] due;
+    private int size;
+    private long now;
+
+    public SignalScheduler() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SignalScheduler(int initialCapacity) {
+        heap = new TrafficSignal[Math.max(1, initialCapacity)];
+        due = new long[heap.length];
+    }
+
+    /**
+     * Starts timing a signal from the current time; its current state lasts for its configured duration.
+     */
+    public void schedule(TrafficSignal ts) {
+        if (ts.heapIndex >= 0) {
+            throw new IllegalStateException("Signal " + ts.getSignalID() + " is already scheduled");
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+            due = Arrays.copyOf(due, size * 2);
+        }
+        int i = size++;
+        place(i, ts, now + toMillis(ts.getCurrentTimer()));
+        siftUp(i);
+    }
+
+    /**
+     * Stops timing a signal. Does nothing if the signal is not scheduled here.
+     */
+    public void unschedule(TrafficSignal ts) {
+        int i = ts.heapIndex;
+        if (i < 0 || i >= size || heap[i] != ts) {
+            return;
+        }
+        ts.heapIndex = -1;
+        size--;
+        if (i != size) {
+            place(i, heap[size], due[size]);
+            siftDown(i);
+            siftUp(i);
+        }
+        heap[size] = null;
+    }
+
+    /**
+     * Moves the clock forward by the given number of seconds.
+     * @return the number of state transitions fired.
+     */
+    public int advanceBy(double seconds) {
+        return advanceTo(now + Math.round(seconds * 1000));
+    }
+
+    /**
+     * Moves the clock to the given time, firing every transition that falls due on the way.
+     * A signal whose state is shorter than the gap fires several times, each new state
+     * starting exactly when the previous one ran out.
+     * @return the number of state transitions fired.
+     */
+    public int advanceTo(long time) {
+        if (time < now) {
+            throw new IllegalArgumentException("Cannot move the clock backwards from " + now + " to " + time);
+        }
+        int fired = 0;
+        while (size > 0 && due[0] <= time) {
+            TrafficSignal ts = heap[0];
+            ts.signal();
+            due[0] += toMillis(ts.getCurrentTimer());
+            siftDown(0);
+            fired++;
+        }
+        now = time;
+        return fired;
+    }
+
+    /**
+     * Moves the clock to the given time like advanceTo, but works out each signal's state
+     * from its cycle length instead of firing transitions one by one, so the cost is
+     * O(number of signals) however far the clock moves. The result is the same as advanceTo.
+     * @return the number of state transitions that fell due.
+     */
+    public long fastForwardTo(long time) {
+        if (time < now) {
+            throw new IllegalArgumentException("Cannot move the clock backwards from " + now + " to " + time);
+        }
+        long fired = 0;
+        for (int i = 0; i < size; i++) {
+            long deadline = due[i];
+            if (deadline > time) {
+                continue;
+            }
+            TrafficSignal ts = heap[i];
+            long cycle = toMillis(ts.getTimer(0)) + toMillis(ts.getTimer(1)) + toMillis(ts.getTimer(2));
+            // the current state ends at its deadline; after that only whole cycles and a partial one remain
+            ts.signal();
+            deadline += toMillis(ts.getCurrentTimer());
+            fired++;
+            if (deadline <= time) {
+                long cycles = (time - deadline) / cycle;
+                ts.fastForward(3 * cycles);
+                deadline += cycles * cycle;
+                fired += 3 * cycles;
+            }
+            while (deadline <= time) {
+                ts.signal();
+                deadline += toMillis(ts.getCurrentTimer());
+                fired++;
+            }
+            due[i] = deadline;
+        }
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        now = time;
+        return fired;
+    }
+
+    /**
+     * Time in milliseconds until the signal's current state runs out, or -1 if it is not scheduled here.
+     */
+    public long getRemaining(TrafficSignal ts) {
+        int i = ts.heapIndex;
+        if (i < 0 || i >= size || heap[i] != ts) {
+            return -1;
+        }
+        return due[i] - now;
+    }
+
+    /**
+     * Time of the next transition, or Long.MAX_VALUE if no signal is scheduled.
+     */
+    public long nextTransitionTime() {
+        return size == 0 ? Long.MAX_VALUE : due[0];
+    }
+
+    public long getTime() {
+        return now;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the clock and every scheduled signal (ID, state, timers, deadline) to a checkpoint.
+     * Signals are written in heap order, so reading them back needs no re-sorting.
+     */
+    public void writeSnapshot(SnapshotOutput out) throws IOException {
+        out.putLong(now);
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            TrafficSignal ts = heap[i];
+            out.putString(ts.getSignalID());
+            out.putByte((byte) ts.getStateIndex());
+            out.putInt(ts.getTimer(0));
+            out.putInt(ts.getTimer(1));
+            out.putInt(ts.getTimer(2));
+            out.putLong(due[i]);
+        }
+    }
+
+    /**
+     * Rebuilds a scheduler written by writeSnapshot, creating its signals in the given registry.
+     */
+    public static SignalScheduler readSnapshot(SnapshotInput in, SignalRegistry registry) throws IOException {
+        long now = in.getLong();
+        int size = in.getInt();
+        if (size < 0) {
+            throw new IOException("Corrupt signal snapshot: " + size + " signals");
+        }
+        SignalScheduler scheduler = new SignalScheduler(size);
+        for (int i = 0; i < size; i++) {
+            String id = in.getString();
+            TrafficSignal ts;
+            try {
+                ts = new TrafficSignal(registry, id);
+            } catch (InvalidSignalIDException e) {
+                throw new IOException("Cannot restore signal: " + e.getMessage(), e);
+            }
+            int stateIndex = in.getByte();
+            if (stateIndex < 0 || stateIndex > 2) {
+                throw new IOException("Corrupt signal snapshot: state " + stateIndex + " for signal " + id);
+            }
+            ts.restore(stateIndex, in.getInt(), in.getInt(), in.getInt());
+            scheduler.place(i, ts, in.getLong());
+        }
+        scheduler.size = size;
+        scheduler.now = now;
+        return scheduler;
+    }
+
+    private static long toMillis(int seconds) {
+        return seconds * 1000L;
+    }
+
+    private void place(int i, TrafficSignal ts, long time) {
+        heap[i] = ts;
+        due[i] = time;
+        ts.heapIndex = i;
+    }
+
+    private void siftUp(int i) {
+        TrafficSignal ts = heap[i];
+        long time = due[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (due[parent] <= time) {
+                break;
+            }
+            place(i, heap[parent], due[parent]);
+            i = parent;
+        }
+        place(i, ts, time);
+    }
+
+    private void siftDown(int i) {
+        TrafficSignal ts = heap[i];
+        long time = due[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && due[right] < due[child]) {
+                child = right;
+            }
+            if (time <= due[child]) {
+                break;
+            }
+            place(i, heap[child], due[child]);
+            i = child;
+        }
+        place(i, ts, time);
+    }
+}
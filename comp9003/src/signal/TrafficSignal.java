@@ -4,40 +4,78 @@ import java.util.ArrayList;
 import java.util.List;
 import exception.InvalidSignalIDException;
 import exception.InvalidTimerException;
+import report.SimulationReporter;
 
 public class TrafficSignal {
     private String signalID;
     private String[] states = {"red", "yellow", "green"};
     private int[] timers = {10, 2, 15};
+    // Index of the state that follows each state: red -> green -> yellow -> red
+    private static final int[] NEXT = {2, 0, 1};
     private int currentIndex = -1;
-    private static final List<TrafficSignal> signals = new ArrayList<>();
+    int heapIndex = -1; // position in a SignalScheduler's heap, -1 when not scheduled
+    private final SignalRegistry registry;
+    private List<Runnable> timerListeners; // told after each change of timers, null until one is added
 
+    /**
+     * Creates a signal in the global registry.
+     */
     public TrafficSignal(String signalID) throws InvalidSignalIDException {
+        this(SignalRegistry.global(), signalID);
+    }
+
+    /**
+     * Creates a signal in the given registry, e.g. one per simulation scenario.
+     */
+    public TrafficSignal(SignalRegistry registry, String signalID) throws InvalidSignalIDException {
         if (signalID == null || signalID.isEmpty()) {
             throw new InvalidSignalIDException("Signal ID cannot be null or empty");
         }
         this.signalID = signalID;
         this.currentIndex = 0;
-        signals.add(this);
+        this.registry = registry;
+        registry.register(this);
     }
 
     /**
-     * Cycle to next state, throw exception on invalid transition
+     * Cycle to next state: red, then green, then yellow, then back to red.
+     * A SignalScheduler calls this when the current state's timer runs out.
      */
     public void signal() {
-        // cycle through states with wrap-around
-        currentIndex = (currentIndex + 1) % states.length;
+        currentIndex = NEXT[currentIndex];
     }
 
     /**
-     * Display all signals' status
+     * Same as calling signal() the given number of times; the cycle repeats every three transitions.
      */
-    public static void showTrafficSignal() {
-        for (TrafficSignal ts : signals) {
-            String state = ts.currentIndex >= 0 ? ts.states[ts.currentIndex] : "none";
-            int timer = ts.currentIndex >= 0 ? ts.timers[ts.currentIndex] : 0;
-            System.out.println("Signal " + ts.signalID + ": " + state + " (" + timer + "s)");
+    public void fastForward(long transitions) {
+        if (transitions < 0) {
+            throw new IllegalArgumentException("Cannot fast-forward a negative number of transitions: " + transitions);
         }
+        for (long i = transitions % 3; i > 0; i--) {
+            signal();
+        }
+    }
+
+    /**
+     * Display all signals' status in the global registry
+     */
+    public static void showTrafficSignal() {
+        SignalRegistry.global().showTrafficSignal();
+    }
+
+    /**
+     * Reports this signal's current state and its duration.
+     */
+    public void report(SimulationReporter reporter) {
+        reporter.signalState(signalID, getCurrentState(), getCurrentTimer());
+    }
+
+    /**
+     * Removes this signal from its registry so its ID can be reused.
+     */
+    public void deregister() {
+        registry.deregister(this);
     }
 
     public String getCurrentState() {
@@ -48,19 +86,80 @@ public class TrafficSignal {
         return currentIndex >= 0 ? timers[currentIndex] : 0;
     }
 
+    /**
+     * Sets the duration in seconds of each state.
+     * If the signal is scheduled, the state it is in keeps its current deadline and
+     * the new durations apply from the next transition on.
+     */
     public void setTimers(int redTime, int yellowTime, int greenTime) throws InvalidTimerException {
         if (redTime <= 0 || yellowTime <= 0 || greenTime <= 0) {
-            throw new InvalidTimerException("Timer values must be positive");
+            throw InvalidTimerException.NON_POSITIVE;
         }
         this.timers[0] = redTime;
         this.timers[1] = yellowTime;
         this.timers[2] = greenTime;
+        if (timerListeners != null) {
+            for (Runnable listener : timerListeners) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * Runs the listener after every change of timers, e.g. to reprice a road graph.
+     */
+    public void addTimerListener(Runnable listener) {
+        if (timerListeners == null) {
+            timerListeners = new ArrayList<>(2);
+        }
+        timerListeners.add(listener);
+    }
+
+    public void removeTimerListener(Runnable listener) {
+        if (timerListeners != null) {
+            timerListeners.remove(listener);
+        }
     }
 
     public String getSignalID() {
         return signalID;
     }
 
+    /**
+     * Red, yellow and green durations in seconds.
+     */
+    public int[] getTimers() {
+        return timers.clone();
+    }
+
+    public boolean isRed() {
+        return currentIndex == 0;
+    }
+
+    public boolean isYellow() {
+        return currentIndex == 1;
+    }
+
+    int getStateIndex() {
+        return currentIndex;
+    }
+
+    int getTimer(int stateIndex) {
+        return timers[stateIndex];
+    }
+
+    // Puts the signal back into a checkpointed state
+    void restore(int stateIndex, int redTime, int yellowTime, int greenTime) {
+        this.currentIndex = stateIndex;
+        this.timers[0] = redTime;
+        this.timers[1] = yellowTime;
+        this.timers[2] = greenTime;
+    }
+
+    public SignalRegistry getRegistry() {
+        return registry;
+    }
+
     public static void main(String[] args) {
         try {
             TrafficSignal ts1 = new TrafficSignal("A");
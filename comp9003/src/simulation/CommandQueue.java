@@ -0,0 +1,48 @@
+package simulation;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded multi-producer, single-consumer queue of linked nodes.
+ * A producer appends with one atomic swap of the tail and then links the old tail to its
+ * node, so producers never wait for each other or for the consumer. The consumer only
+ * follows next links from its own head. An item whose producer has swapped the tail but
+ * not yet linked it is simply picked up by a later poll.
+ */
+final class CommandQueue<T> {
+
+    private static final class Node<T> {
+        T value;
+        volatile Node<T> next;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+
+    private final AtomicReference<Node<T>> tail;
+    private Node<T> head; // consumer side only; its value has already been taken
+
+    CommandQueue() {
+        head = new Node<>(null);
+        tail = new AtomicReference<>(head);
+    }
+
+    // Any thread
+    void offer(T value) {
+        Node<T> node = new Node<>(value);
+        tail.getAndSet(node).next = node;
+    }
+
+    // The consumer thread only; null when nothing is ready
+    T poll() {
+        Node<T> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        head = next;
+        T value = next.value;
+        next.value = null;
+        return value;
+    }
+}
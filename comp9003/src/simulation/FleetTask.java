@@ -0,0 +1,67 @@
+package simulation;
+
+import vehicle.VehicleStore;
+
+/**
+ * A fleet as a MultiRateScheduler task, stepping at the fleet's own time interval.
+ * A step runs at the time it starts and sees the signals as they are at that moment.
+ * Its whole effect is applied then, so at a time inside a step the fleet is already
+ * where the step ends: a synchronization point that is not a multiple of the fleet's
+ * interval finds it up to one step ahead of the clock. Result lines of a fleet coarser
+ * than the reporting interval show that lead.
+ * Under the default movement a fleet interacts with nothing, so it never asks to run:
+ * it is fast-forwarded at each synchronization point over every step started before it.
+ * With a motion model it runs at the start of each of its steps.
+ */
+public class FleetTask implements MultiRateScheduler.Task {
+
+    private final VehicleStore vehicles;
+    private final TickEngine engine;
+    private final long period;
+    private long nextStart;
+
+    /**
+     * @param now clock time the fleet is up to; its steps start at multiples of its time interval.
+     */
+    public FleetTask(VehicleStore vehicles, TickEngine engine, long now) {
+        this.vehicles = vehicles;
+        this.engine = engine;
+        this.period = Math.max(1, Math.round(vehicles.getTimeInterval() * 1000));
+        this.nextStart = (now + period - 1) / period * period;
+    }
+
+    @Override
+    public long run(long now) {
+        engine.moveVehicles(vehicles);
+        nextStart += period;
+        return nextDue();
+    }
+
+    @Override
+    public long syncTo(long time) {
+        if (time > nextStart) {
+            long steps = (time - nextStart + period - 1) / period;
+            engine.moveVehicles(vehicles, steps);
+            nextStart += steps * period;
+        }
+        return nextDue();
+    }
+
+    /**
+     * Time the fleet's next step starts.
+     */
+    public long getNextStart() {
+        return nextStart;
+    }
+
+    public VehicleStore getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Time this fleet next needs to run, for adding the task to a scheduler.
+     */
+    public long nextDue() {
+        return vehicles.getMotionModel() == null ? Long.MAX_VALUE : nextStart;
+    }
+}
@@ -0,0 +1,144 @@
+package simulation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import signal.SignalScheduler;
+import vehicle.VehicleStore;
+
+/**
+ * Splits the fleet into chunks and runs the vehicle phase on a ForkJoinPool.
+ * The signal phase starts once every chunk is done; it only fires the transitions
+ * that are due, so it stays on the calling thread. Each chunk only counts the
+ * vehicles that reach their second move; once the phase is done those chunks report
+ * them in slot order, so the output matches the sequential engine exactly.
+ * Spans of steps under the default movement are fast-forwarded chunk by chunk in the
+ * same way; chunks with vehicles to report wait for the caller to report them in the
+ * order the sequential engine would, and are then moved on.
+ */
+public class ForkJoinTickEngine implements TickEngine {
+
+    // Below this many items per chunk the split costs more than it saves
+    private static final int MIN_CHUNK = 4096;
+    // Chunks per worker, so a slow chunk doesn't leave the other workers idle
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final ForkJoinPool pool;
+    private final int workers;
+    private int[] reports = new int[0]; // per chunk, filled during the vehicle phase
+    private int[] ranges = new int[0]; // from, to of the chunks left to report
+
+    public ForkJoinTickEngine(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of workers must be positive: " + workers);
+        }
+        this.workers = workers;
+        this.pool = new ForkJoinPool(workers);
+    }
+
+    @Override
+    public int step(VehicleStore vehicles, SignalScheduler signals) {
+        moveVehicles(vehicles);
+        return signals.advanceBy(vehicles.getTimeInterval());
+    }
+
+    @Override
+    public void moveVehicles(VehicleStore vehicles) {
+        int size = vehicles.size();
+        int chunks = chunkCount(size);
+        if (chunks <= 1 || vehicles.getMotionModel() != null) {
+            // a motion model looks at the whole fleet, so it runs on the calling thread
+            vehicles.advance();
+            return;
+        }
+        int chunkSize = invokeChunks(vehicles, chunks, 1);
+        for (int i = 0; i < chunks; i++) {
+            if (reports[i] > 0) {
+                int from = i * chunkSize;
+                vehicles.reportSecondMoves(from, Math.min(size, from + chunkSize));
+            }
+        }
+    }
+
+    @Override
+    public void moveVehicles(VehicleStore vehicles, long steps) {
+        int size = vehicles.size();
+        int chunks = chunkCount(size);
+        if (steps <= 1 || chunks <= 1 || vehicles.getMotionModel() != null) {
+            TickEngine.super.moveVehicles(vehicles, steps);
+            return;
+        }
+        int chunkSize = invokeChunks(vehicles, chunks, steps);
+        int count = 0;
+        for (int i = 0; i < chunks; i++) {
+            if (reports[i] > 0) {
+                int from = i * chunkSize;
+                ranges[2 * count] = from;
+                ranges[2 * count + 1] = Math.min(size, from + chunkSize);
+                count++;
+            }
+        }
+        if (count > 0) {
+            vehicles.reportFastForward(ranges, count, steps);
+            for (int r = 0; r < count; r++) {
+                vehicles.fastForwardUnreported(ranges[2 * r], ranges[2 * r + 1], steps);
+            }
+        }
+    }
+
+    @Override
+    public int getWorkers() {
+        return workers;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    // Runs the vehicle phase of the given number of steps over every chunk; returns the chunk size
+    private int invokeChunks(VehicleStore vehicles, int chunks, long steps) {
+        if (reports.length < chunks) {
+            reports = new int[chunks];
+            ranges = new int[2 * chunks];
+        }
+        int chunkSize = (vehicles.size() + chunks - 1) / chunks;
+        pool.invoke(new VehicleChunks(vehicles, 0, chunks, chunkSize, steps));
+        return chunkSize;
+    }
+
+    private int chunkCount(int items) {
+        return Math.max(1, Math.min(workers * CHUNKS_PER_WORKER, items / MIN_CHUNK));
+    }
+
+    // Covers chunks [lo, hi) and halves the range until one chunk is left
+    private class VehicleChunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final VehicleStore vehicles;
+        private final int lo;
+        private final int hi;
+        private final int chunkSize;
+        private final long steps;
+
+        VehicleChunks(VehicleStore vehicles, int lo, int hi, int chunkSize, long steps) {
+            this.vehicles = vehicles;
+            this.lo = lo;
+            this.hi = hi;
+            this.chunkSize = chunkSize;
+            this.steps = steps;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                int from = lo * chunkSize;
+                int to = Math.min(vehicles.size(), from + chunkSize);
+                reports[lo] = steps == 1 ? vehicles.advanceDeferred(from, to) : vehicles.fastForwardDeferred(from, to, steps);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new VehicleChunks(vehicles, lo, mid, chunkSize, steps),
+                    new VehicleChunks(vehicles, mid, hi, chunkSize, steps));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package simulation;
+
+import java.util.List;
+import network.IntersectionNetwork;
+import network.MoveOutcome;
+
+/**
+ * A set of intersection trackers as a MultiRateScheduler task: at each multiple of its
+ * interval every tracker with intersections left moves through its next one. Trackers
+ * depend only on their road and pattern, so the checks keep their own cadence whatever
+ * the fleets' steps, and cost nothing in between.
+ */
+public class IntersectionTask implements MultiRateScheduler.Task {
+
+    private final List<IntersectionNetwork> trackers;
+    private final long period;
+    private long moves;
+    private long missing;
+
+    /**
+     * @param period milliseconds between checks; they happen at multiples of it.
+     */
+    public IntersectionTask(List<IntersectionNetwork> trackers, long period) {
+        this.trackers = trackers;
+        this.period = period;
+    }
+
+    @Override
+    public long run(long now) {
+        for (IntersectionNetwork tracker : trackers) {
+            MoveOutcome outcome = tracker.tryMoveThrough();
+            if (outcome != MoveOutcome.COMPLETED) {
+                moves++;
+                if (outcome == MoveOutcome.MISSING) {
+                    missing++;
+                }
+            }
+        }
+        return now + period;
+    }
+
+    @Override
+    public long syncTo(long time) {
+        long due = nextDue(time);
+        return due == time ? run(time) : due; // what falls due at a synchronization point happens there
+    }
+
+    /**
+     * First check at or after the given time.
+     */
+    public long nextDue(long time) {
+        return (time + period - 1) / period * period;
+    }
+
+    /**
+     * Intersections moved through since the last call, missing ones included.
+     */
+    public long takeMoves() {
+        long n = moves;
+        moves = 0;
+        return n;
+    }
+
+    /**
+     * Non-existent intersections trackers tried to use since the last call.
+     */
+    public long takeMissing() {
+        long n = missing;
+        missing = 0;
+        return n;
+    }
+}
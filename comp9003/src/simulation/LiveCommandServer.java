@@ -0,0 +1,62 @@
+package simulation;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Accepts LiveCommands over loopback sockets while a LiveSimulation runs. Each connection
+ * is served by a thread of its own, so every client is one more producer on the
+ * simulation's command queue; answers go back on the same connection, a line per command.
+ */
+public class LiveCommandServer implements AutoCloseable {
+
+    private final ServerSocket server;
+    private final LiveSimulation sim;
+
+    /**
+     * Listens on the given port of the loopback address; 0 picks a free port.
+     */
+    public LiveCommandServer(int port, LiveSimulation sim) throws IOException {
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.sim = sim;
+        Thread acceptor = new Thread(this::accept, "live-commands-" + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                Thread client = new Thread(() -> serve(socket), "live-client-" + socket.getPort());
+                client.setDaemon(true);
+                client.start();
+            }
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             PrintStream out = new PrintStream(socket.getOutputStream(), false, StandardCharsets.UTF_8)) {
+            LiveCommands.feed(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), sim, out);
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+}
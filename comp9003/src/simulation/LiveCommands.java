@@ -0,0 +1,119 @@
+package simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.concurrent.Callable;
+import exception.InvalidTimerException;
+import exception.SimulationException;
+
+/**
+ * The text commands a running LiveSimulation accepts from a command file or a socket,
+ * one per line ('#' starts a comment):
+ *   vehicle car c1      add a vehicle: car, bus or truck, then its ID
+ *   remove c1           remove a vehicle
+ *   signal A            add a traffic signal
+ *   timers A 10 2 15    red, yellow and green seconds for a signal
+ *   status              simulated time, vehicle and signal counts
+ *   wait 60             pause this source until the run is 60 simulated seconds further
+ *
+ * Each command answers with one line, "error: ..." if it was rejected.
+ */
+public final class LiveCommands {
+
+    private static final long WAIT_POLL_MILLIS = 10;
+
+    private LiveCommands() {
+    }
+
+    /**
+     * Reads commands until the end of the input, applying each before reading the next.
+     */
+    public static void feed(Reader input, LiveSimulation sim, PrintStream responses) throws IOException {
+        BufferedReader in = new BufferedReader(input);
+        String line;
+        while ((line = in.readLine()) != null) {
+            int hash = line.indexOf('#');
+            String[] words = (hash >= 0 ? line.substring(0, hash) : line).trim().split("\\s+");
+            if (words[0].isEmpty()) {
+                continue;
+            }
+            String response;
+            try {
+                response = apply(words, sim);
+            } catch (SimulationException e) {
+                response = "error: " + e.getMessage();
+            }
+            responses.println(response);
+            responses.flush();
+        }
+    }
+
+    private static String apply(String[] words, LiveSimulation sim) throws SimulationException {
+        switch (words[0]) {
+            case "vehicle":
+                expect(words, 3, "vehicle <car|bus|truck> <id>");
+                byte type = ScenarioReader.typeCode(words[1]);
+                return sim.call(() -> sim.addVehicle(type, words[2]));
+            case "remove":
+                expect(words, 2, "remove <id>");
+                return sim.call(() -> sim.removeVehicle(words[1]));
+            case "signal":
+                expect(words, 2, "signal <id>");
+                return sim.call(() -> sim.addSignal(words[1]));
+            case "timers":
+                expect(words, 5, "timers <id> <red> <yellow> <green>");
+                int red = parseSeconds(words[2]);
+                int yellow = parseSeconds(words[3]);
+                int green = parseSeconds(words[4]);
+                return sim.call(timers(sim, words[1], red, yellow, green));
+            case "status":
+                expect(words, 1, "status");
+                return sim.call(sim::status);
+            case "wait":
+                expect(words, 2, "wait <seconds>");
+                return waitFor(sim, parseSeconds(words[1]));
+            default:
+                throw new SimulationException("unknown command \"" + words[0] + "\"");
+        }
+    }
+
+    private static Callable<String> timers(LiveSimulation sim, String signalID, int red, int yellow, int green) {
+        return () -> {
+            try {
+                sim.setTimers(signalID, red, yellow, green);
+            } catch (InvalidTimerException e) {
+                throw new SimulationException(e.getMessage());
+            }
+            return "Timers updated.";
+        };
+    }
+
+    private static String waitFor(LiveSimulation sim, int seconds) throws SimulationException {
+        double until = sim.getTime() + seconds;
+        try {
+            while (sim.getTime() < until && sim.isRunning()) {
+                Thread.sleep(WAIT_POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimulationException("interrupted");
+        }
+        return sim.status();
+    }
+
+    private static int parseSeconds(String value) throws SimulationException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new SimulationException("invalid number \"" + value + "\"");
+        }
+    }
+
+    private static void expect(String[] words, int count, String usage) throws SimulationException {
+        if (words.length != count) {
+            throw new SimulationException("expected \"" + usage + "\"");
+        }
+    }
+}
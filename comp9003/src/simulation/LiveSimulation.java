@@ -0,0 +1,286 @@
+package simulation;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import exception.InvalidSignalIDException;
+import exception.InvalidTimerException;
+import exception.SimulationException;
+import signal.SignalRegistry;
+import signal.SignalScheduler;
+import signal.TrafficSignal;
+import vehicle.FleetManager;
+import vehicle.VehicleStore;
+
+/**
+ * A fleet and its signals that can keep running on a thread of their own while they are
+ * being changed.
+ *
+ * Everything that reads or changes the model is a command. Until start() is called a
+ * command simply runs on the caller's thread. Once the simulation runs, commands from
+ * any number of threads (the menu, a command file, a socket; see LiveCommands) go onto a
+ * lock-free queue, and the simulation thread drains it between two steps and runs every
+ * command found there before the next step starts. Each batch of commands therefore sees
+ * and leaves the model at a step boundary, and the tick loop never takes a lock: it only
+ * polls the queue and completes the futures the callers wait on.
+ *
+ * The run is paced against the wall clock: at speed 1 a simulated second takes a real
+ * second, at speed 0 the run goes as fast as it can. Commands are also applied while the
+ * thread waits for the next step to fall due, so they take effect within moments.
+ */
+public class LiveSimulation implements AutoCloseable {
+
+    private final FleetManager fleet;
+    private final List<TrafficSignal> signals;
+    private final SignalRegistry registry;
+    private final SignalScheduler scheduler;
+    private final TickEngine engine;
+    private final CommandQueue<Pending<?>> queue = new CommandQueue<>();
+    private volatile Thread thread;
+    private volatile boolean stopping;
+    private volatile boolean stopped;
+    private final AtomicInteger submitting = new AtomicInteger(); // submit() calls between their stop check and their offer
+    private volatile long time; // simulated milliseconds reached, for status lines
+    private volatile RuntimeException failure;
+
+    /**
+     * @param signals the signals in the order they were added, shared with the caller.
+     */
+    public LiveSimulation(FleetManager fleet, List<TrafficSignal> signals, SignalRegistry registry,
+                          SignalScheduler scheduler, TickEngine engine) {
+        this.fleet = fleet;
+        this.signals = signals;
+        this.registry = registry;
+        this.scheduler = scheduler;
+        this.engine = engine;
+        this.time = scheduler.getTime();
+    }
+
+    /**
+     * Starts running the model on a thread of its own, one fleet step at a time.
+     * @param speed simulated seconds per real second; 0 for as fast as possible.
+     */
+    public synchronized void start(double speed) {
+        if (thread != null) {
+            throw new IllegalStateException("Live simulation already started");
+        }
+        if (!(speed >= 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Speed must be zero or positive. Received: " + speed);
+        }
+        thread = new Thread(() -> run(speed), "live-simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a command for the next step boundary, or runs it now if the simulation has
+     * not been started. Safe to call from any thread.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> command) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Thread runner = thread;
+        if (runner == null) {
+            complete(new Pending<>(command, result));
+            return result;
+        }
+        // counted before the check, so a stopping run waits for this offer before its last drain
+        submitting.incrementAndGet();
+        try {
+            if (stopping) {
+                result.completeExceptionally(stoppedError());
+            } else {
+                queue.offer(new Pending<>(command, result));
+                LockSupport.unpark(runner);
+            }
+        } finally {
+            submitting.decrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Submits a command and waits for its result.
+     * @throws SimulationException if the command failed, with its message.
+     */
+    public <T> T call(Callable<T> command) throws SimulationException {
+        try {
+            return submit(command).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SimulationException) {
+                throw (SimulationException) cause;
+            }
+            throw new SimulationException(String.valueOf(cause.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimulationException("Interrupted while waiting for the simulation");
+        }
+    }
+
+    // The operations below are commands' building blocks; they must run as commands once started
+
+    /**
+     * Adds a vehicle unless one with the same ID exists.
+     * @return the message to show the operator.
+     */
+    public String addVehicle(byte type, String vehicleID) {
+        if (fleet.find(vehicleID) != FleetManager.NO_VEHICLE) {
+            return "Vehicle \"" + vehicleID + "\" already exists.";
+        }
+        fleet.spawn(type, vehicleID);
+        return "Vehicle \"" + vehicleID + "\" added.";
+    }
+
+    /**
+     * @return the message to show the operator.
+     */
+    public String removeVehicle(String vehicleID) {
+        return fleet.despawn(vehicleID) ? "Vehicle removed." : "No vehicle \"" + vehicleID + "\".";
+    }
+
+    /**
+     * Adds a signal and starts timing it from the current time.
+     * @return the message to show the operator.
+     */
+    public String addSignal(String signalID) {
+        try {
+            TrafficSignal ts = new TrafficSignal(registry, signalID);
+            signals.add(ts);
+            scheduler.schedule(ts);
+            return "Traffic signal \"" + signalID + "\" added.";
+        } catch (InvalidSignalIDException ex) {
+            return "Invalid signal ID: " + ex.getMessage();
+        }
+    }
+
+    /**
+     * Retimes a signal; its current state keeps its deadline.
+     */
+    public void setTimers(String signalID, int red, int yellow, int green) throws SimulationException, InvalidTimerException {
+        TrafficSignal ts = registry.lookup(signalID);
+        if (ts == null) {
+            throw new SimulationException("Unknown signal \"" + signalID + "\"");
+        }
+        ts.setTimers(red, yellow, green);
+    }
+
+    public String status() {
+        return String.format("Time %.1f s: %d vehicles, %d traffic signals", time / 1000.0, fleet.size(), signals.size());
+    }
+
+    public FleetManager getFleet() {
+        return fleet;
+    }
+
+    public VehicleStore getVehicles() {
+        return fleet.getStore();
+    }
+
+    public List<TrafficSignal> getSignals() {
+        return signals;
+    }
+
+    public boolean isRunning() {
+        return thread != null && !stopped;
+    }
+
+    /**
+     * Simulated seconds reached.
+     */
+    public double getTime() {
+        return time / 1000.0;
+    }
+
+    /**
+     * Stops the run after the step in progress. Commands already queued are still run.
+     * @throws SimulationException if the run had stopped because a step failed.
+     */
+    @Override
+    public void close() throws SimulationException {
+        Thread runner = thread;
+        if (runner != null) {
+            stopping = true;
+            LockSupport.unpark(runner);
+            try {
+                runner.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SimulationException("Interrupted while stopping the simulation");
+            }
+        }
+        if (failure != null) {
+            throw new SimulationException("Live simulation failed: " + failure);
+        }
+    }
+
+    private void run(double speed) {
+        VehicleStore vehicles = fleet.getStore();
+        MultiRateScheduler clock = new MultiRateScheduler(scheduler.getTime());
+        SignalTask signalTask = new SignalTask(scheduler, engine, vehicles.getMotionModel() != null);
+        clock.add("signals", signalTask, signalTask.nextDue());
+        FleetTask fleetTask = new FleetTask(vehicles, engine, clock.getTime());
+        clock.add("vehicles", fleetTask, fleetTask.nextDue());
+        long stepMillis = Math.max(1, Math.round(vehicles.getTimeInterval() * 1000));
+        long wallStart = System.nanoTime();
+        long simStart = clock.getTime();
+        try {
+            while (!stopping) {
+                applyCommands();
+                clock.advanceTo(clock.getTime() + stepMillis);
+                signalTask.takeFired();
+                time = clock.getTime();
+                if (speed > 0) {
+                    long due = wallStart + (long) ((time - simStart) * 1_000_000 / speed);
+                    for (long wait = due - System.nanoTime(); wait > 0 && !stopping; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(this, wait); // woken early by each submitted command
+                        applyCommands();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            stopping = true;
+            while (submitting.get() > 0) {
+                Thread.onSpinWait();
+            }
+            applyCommands(); // whatever was queued before the stop
+            stopped = true;
+        }
+    }
+
+    private void applyCommands() {
+        for (Pending<?> p = queue.poll(); p != null; p = queue.poll()) {
+            if (failure != null) {
+                p.result.completeExceptionally(stoppedError());
+            } else {
+                complete(p);
+            }
+        }
+    }
+
+    private static <T> void complete(Pending<T> p) {
+        try {
+            p.result.complete(p.command.call());
+        } catch (Exception e) {
+            p.result.completeExceptionally(e);
+        }
+    }
+
+    private SimulationException stoppedError() {
+        return new SimulationException(failure != null ? "Live simulation failed: " + failure : "Live simulation has stopped");
+    }
+
+    private static final class Pending<T> {
+        final Callable<T> command;
+        final CompletableFuture<T> result;
+
+        Pending(Callable<T> command, CompletableFuture<T> result) {
+            this.command = command;
+            this.result = result;
+        }
+    }
+}
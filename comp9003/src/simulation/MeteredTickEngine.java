@@ -0,0 +1,113 @@
+package simulation;
+
+import java.lang.management.ManagementFactory;
+import metrics.SimulationMetrics;
+import signal.SignalScheduler;
+import vehicle.VehicleStore;
+
+/**
+ * Wraps another engine and records every step in a SimulationMetrics: step latency,
+ * vehicles moved, signal transitions and the bytes the stepping thread allocated.
+ * A span of steps fast-forwarded in one pass is one span latency sample, not a step
+ * latency sample per step.
+ * The bytes allocated by fork-join workers are not counted, only the calling thread's.
+ */
+public class MeteredTickEngine implements TickEngine {
+
+    private final TickEngine engine;
+    private final SimulationMetrics metrics;
+    private final com.sun.management.ThreadMXBean threads; // null if the JVM can't count allocations
+
+    public MeteredTickEngine(TickEngine engine, SimulationMetrics metrics) {
+        this.engine = engine;
+        this.metrics = metrics;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean sun = bean instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) bean : null;
+        this.threads = sun != null && sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()
+                ? sun : null;
+    }
+
+    @Override
+    public int step(VehicleStore vehicles, SignalScheduler signals) {
+        long allocatedBefore = allocated();
+        long start = System.nanoTime();
+        int fired = engine.step(vehicles, signals);
+        metrics.recordSteps(1, System.nanoTime() - start, vehicles.size(), fired);
+        recordAllocation(1, allocatedBefore);
+        return fired;
+    }
+
+    @Override
+    public long fastForward(VehicleStore vehicles, SignalScheduler signals, long steps) {
+        if (vehicles.getMotionModel() != null) {
+            return TickEngine.super.fastForward(vehicles, signals, steps); // through step(), one sample per step
+        }
+        long allocatedBefore = allocated();
+        long start = System.nanoTime();
+        long fired = engine.fastForward(vehicles, signals, steps);
+        metrics.recordSpan(steps, System.nanoTime() - start, vehicles.size(), fired);
+        recordAllocation(steps, allocatedBefore);
+        return fired;
+    }
+
+    @Override
+    public void moveVehicles(VehicleStore vehicles) {
+        moveVehicles(vehicles, 1);
+    }
+
+    @Override
+    public void moveVehicles(VehicleStore vehicles, long steps) {
+        if (vehicles.getMotionModel() != null && steps > 1) {
+            TickEngine.super.moveVehicles(vehicles, steps); // through moveVehicles(vehicles), one sample per step
+            return;
+        }
+        long allocatedBefore = allocated();
+        long start = System.nanoTime();
+        engine.moveVehicles(vehicles, steps);
+        if (steps == 1) {
+            metrics.recordSteps(1, System.nanoTime() - start, vehicles.size(), 0);
+        } else {
+            metrics.recordSpan(steps, System.nanoTime() - start, vehicles.size(), 0);
+        }
+        recordAllocation(steps, allocatedBefore);
+    }
+
+    @Override
+    public long advanceSignals(SignalScheduler signals, long time) {
+        long fired = engine.advanceSignals(signals, time);
+        metrics.recordTransitions(fired);
+        return fired;
+    }
+
+    @Override
+    public long fastForwardSignals(SignalScheduler signals, long time) {
+        long fired = engine.fastForwardSignals(signals, time);
+        metrics.recordTransitions(fired);
+        return fired;
+    }
+
+    @Override
+    public int getWorkers() {
+        return engine.getWorkers();
+    }
+
+    @Override
+    public void close() {
+        engine.close();
+    }
+
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    private long allocated() {
+        return threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private void recordAllocation(long steps, long before) {
+        if (before >= 0) {
+            metrics.recordAllocation(steps, threads.getCurrentThreadAllocatedBytes() - before);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * Runs parts of a simulation that update at different rates on one clock.
+ * Each task (a fleet, the signals, a set of intersection trackers...) says when it next
+ * needs to run, and the scheduler only runs it then, so a coarse fleet costs nothing
+ * between its steps and signals cost nothing between transitions. Total work follows
+ * how much is actually happening rather than the finest step in use.
+ *
+ * advanceTo(time) is a synchronization point: every run due before that time happens,
+ * in time order, then every task is brought up to the time itself. Runs due at the same
+ * moment happen in the order the tasks were added. Times are in milliseconds.
+ *
+ * Work takes effect at the moment it is due, so a task whose unit of work straddles the
+ * synchronization point has already done all of it: a fleet with a 10 s step, synced at
+ * 5 s, shows where it will be at 10 s, exactly as stepping it would (see FleetTask).
+ * Tasks whose work falls due at multiples of the synchronization interval agree on the
+ * state at that instant.
+ */
+public class MultiRateScheduler {
+
+    /**
+     * Something the scheduler runs.
+     */
+    public interface Task {
+
+        /**
+         * Does the work due at the given time.
+         * @return the next time this task needs to run, or Long.MAX_VALUE if it only
+         *         needs to catch up at synchronization points.
+         */
+        long run(long now);
+
+        /**
+         * Brings the task up to a synchronization point. Called after every run due
+         * before that time has happened.
+         * @return the next time this task needs to run, as for run.
+         */
+        long syncTo(long time);
+    }
+
+    private String[] names = new String[4];
+    private Task[] tasks = new Task[4];
+    private long[] due = new long[4];
+    private long[] runs = new long[4];
+    private int count;
+    private long now;
+
+    public MultiRateScheduler() {
+        this(0);
+    }
+
+    /**
+     * @param start clock time the tasks are already up to.
+     */
+    public MultiRateScheduler(long start) {
+        this.now = start;
+    }
+
+    /**
+     * Adds a task that is up to date with the clock and first needs to run at firstDue.
+     */
+    public void add(String name, Task task, long firstDue) {
+        if (count == tasks.length) {
+            names = Arrays.copyOf(names, count * 2);
+            tasks = Arrays.copyOf(tasks, count * 2);
+            due = Arrays.copyOf(due, count * 2);
+            runs = Arrays.copyOf(runs, count * 2);
+        }
+        names[count] = name;
+        tasks[count] = task;
+        due[count] = firstDue;
+        count++;
+    }
+
+    /**
+     * Runs everything due before the given time, then synchronizes every task at it.
+     * @return the number of task runs, synchronizations not included.
+     */
+    public long advanceTo(long time) {
+        if (time < now) {
+            throw new IllegalArgumentException("Cannot move the clock backwards from " + now + " to " + time);
+        }
+        long ran = 0;
+        while (true) {
+            // a handful of rate classes, so a scan beats keeping a heap in order
+            int next = -1;
+            for (int i = 0; i < count; i++) {
+                if (due[i] < time && (next < 0 || due[i] < due[next])) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            now = due[next];
+            due[next] = tasks[next].run(now);
+            runs[next]++;
+            ran++;
+        }
+        for (int i = 0; i < count; i++) {
+            due[i] = tasks[i].syncTo(time);
+        }
+        now = time;
+        return ran;
+    }
+
+    public long getTime() {
+        return now;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String getName(int i) {
+        return names[i];
+    }
+
+    /**
+     * Number of times task i has run, synchronizations not included.
+     */
+    public long getRuns(int i) {
+        return runs[i];
+    }
+}
@@ -0,0 +1,314 @@
+package simulation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import exception.SimulationException;
+import partition.Link;
+import partition.RecordBatch;
+import partition.SegmentWorker;
+import partition.Transport;
+import partition.VehicleRecord;
+import vehicle.VehicleStore;
+
+/**
+ * Runs a scenario with the road split into segments, each owned by its own worker
+ * (see SegmentWorker), so the fleet is spread over several heaps and several machines'
+ * worth of cores. Segment i covers positions from boundary i-1 up to boundary i; the
+ * first and last segments are open-ended. The coordinator reads the scenario, streams
+ * each vehicle to the segment where it starts, keeps the signals, and drives the workers
+ * from one synchronization point to the next.
+ *
+ * At each synchronization point every worker moves its vehicles, then the vehicles that
+ * crossed a boundary are handed over in one batch per segment before the next move.
+ * Result lines are worked out from the positions every worker sends, summed in the
+ * single-process fleet order, so the results match a single-process run exactly.
+ *
+ * Only the free movement is supported: under car-following each vehicle's move depends
+ * on the move just made by the vehicle ahead, all the way along a lane, which a segment
+ * cannot know before the one ahead of it has finished. Checkpoints and traces are not
+ * written, sources and sinks are not supported and vehicle states are not reported.
+ */
+public final class PartitionedRunner {
+
+    private static final int ADD_BATCH_BYTES = 1 << 16;
+
+    private final double[] boundaries;
+    private final Link[] links;
+    private final RecordBatch[] batches;
+    private final VehicleRecord record = new VehicleRecord();
+    private ScenarioRunner scenario;
+    private int fleetsSent;
+    private int[] keys = new int[0]; // next key per fleet: the slot the vehicle has in a single-process run
+
+    private PartitionedRunner(double[] boundaries, Link[] links) {
+        this.boundaries = boundaries;
+        this.links = links;
+        this.batches = new RecordBatch[links.length];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new RecordBatch();
+        }
+    }
+
+    /**
+     * Runs the scenario at path ("-" for standard input) on boundaries.length + 1 segments
+     * started by the transport, and writes the same CSV results to out as ScenarioRunner.
+     * @param boundaries segment boundaries, strictly ascending.
+     */
+    public static void run(String path, double[] boundaries, Transport transport, PrintStream out)
+            throws IOException, SimulationException {
+        for (int i = 0; i < boundaries.length; i++) {
+            if (!Double.isFinite(boundaries[i]) || (i > 0 && boundaries[i] <= boundaries[i - 1])) {
+                throw new SimulationException("Segment boundaries must be finite and strictly ascending");
+            }
+        }
+        Link[] links = transport.start(boundaries.length + 1);
+        boolean finished = false;
+        try {
+            PartitionedRunner runner = new PartitionedRunner(boundaries, links);
+            runner.load(path);
+            runner.simulate(out);
+            finished = true;
+        } finally {
+            // closing the links tells the workers to exit, whether or not the run finished
+            for (Link link : links) {
+                try {
+                    link.close();
+                } catch (IOException e) {
+                    if (finished) throw e;
+                }
+            }
+            try {
+                transport.close();
+            } catch (IOException e) {
+                if (finished) throw e; // otherwise the error that stopped the run matters more
+            }
+        }
+    }
+
+    private void load(String path) throws IOException, SimulationException {
+        for (int i = 0; i < links.length; i++) {
+            DataOutputStream o = links[i].getOutput();
+            o.writeByte(SegmentWorker.SEGMENT);
+            o.writeDouble(i == 0 ? Double.NEGATIVE_INFINITY : boundaries[i - 1]);
+            o.writeDouble(i == boundaries.length ? Double.POSITIVE_INFINITY : boundaries[i]);
+        }
+        scenario = new ScenarioRunner();
+        scenario.setVehicleSink(this::added);
+        scenario.load(path);
+        if (!scenario.getModel().equals("free")) {
+            throw new SimulationException("Partitioned runs only support the free model, not \"" + scenario.getModel() + "\"");
+        }
+        if (scenario.hasFlows()) {
+            throw new SimulationException("Partitioned runs do not support sources and sinks");
+        }
+        if (scenario.isCheckpointing()) {
+            throw new SimulationException("Partitioned runs do not write checkpoints; remove the checkpoint directive");
+        }
+        if (scenario.hasTimerChanges()) {
+            throw new SimulationException("Partitioned runs do not support timed timer changes");
+        }
+        if (scenario.hasTrackers()) {
+            throw new SimulationException("Partitioned runs do not support intersection trackers");
+        }
+        if (scenario.isTracing()) {
+            throw new SimulationException("Partitioned runs are not traced; remove the trace directive");
+        }
+        sendFleets();
+        for (int i = 0; i < links.length; i++) {
+            batches[i].sendTo(links[i].getOutput(), SegmentWorker.ADD);
+            links[i].getOutput().flush();
+        }
+    }
+
+    // Every vehicle starts at position 0, on whichever segment holds it
+    private void added(int fleet, byte type, String vehicleID) throws IOException {
+        sendFleets();
+        int owner = segmentOf(0.0);
+        DataOutputStream o = batches[owner].next();
+        o.writeInt(fleet);
+        o.writeInt(keys[fleet]++);
+        o.writeByte(type);
+        o.writeUTF(vehicleID);
+        if (batches[owner].bytes() >= ADD_BATCH_BYTES) {
+            batches[owner].sendTo(links[owner].getOutput(), SegmentWorker.ADD);
+        }
+    }
+
+    // Announces fleets the workers have not heard of yet, in order
+    private void sendFleets() throws IOException {
+        List<VehicleStore> fleets = scenario.getFleets();
+        for (; fleetsSent < fleets.size(); fleetsSent++) {
+            for (int i = 0; i < links.length; i++) {
+                links[i].getOutput().writeByte(SegmentWorker.FLEET);
+                links[i].getOutput().writeDouble(fleets.get(fleetsSent).getTimeInterval());
+            }
+            keys = Arrays.copyOf(keys, fleetsSent + 1);
+        }
+    }
+
+    private void simulate(PrintStream out) throws IOException {
+        final double step = scenario.getStep();
+        final int reportEvery = scenario.getReportEvery();
+        final long totalSteps = Math.round(scenario.getDuration() / step);
+        final long stepMillis = Math.round(step * 1000);
+        List<VehicleStore> fleets = scenario.getFleets();
+
+        // the same clock ScenarioRunner runs, with the fleets' moves sent to the workers
+        MultiRateScheduler clock = new MultiRateScheduler();
+        SignalTask signals = new SignalTask(scenario.getScheduler(), new SequentialTickEngine(), false);
+        clock.add("signals", signals, signals.nextDue());
+        RemoteFleet[] remote = new RemoteFleet[fleets.size()];
+        for (int f = 0; f < remote.length; f++) {
+            remote[f] = new RemoteFleet(fleets.get(f).getTimeInterval());
+            clock.add(Integer.toString(f), remote[f], Long.MAX_VALUE);
+        }
+
+        out.println("step,time_s,vehicles,mean_position,signal_transitions");
+        long stepsDone = 0;
+        long pendingTransitions = 0;
+        while (stepsDone < totalSteps) {
+            long s = Math.min(totalSteps, (stepsDone / reportEvery + 1) * reportEvery);
+            clock.advanceTo(s * stepMillis);
+            pendingTransitions += signals.takeFired();
+            advance(remote);
+            stepsDone = s;
+            if (s % reportEvery == 0 || s == totalSteps) {
+                double[] total = positions(fleets.size());
+                long vehicles = (long) total[1];
+                double meanPosition = vehicles == 0 ? 0.0 : total[0] / vehicles;
+                out.println(s + "," + (s * step) + "," + vehicles + "," + meanPosition + "," + pendingTransitions);
+                pendingTransitions = 0;
+            }
+        }
+        out.flush();
+        for (Link link : links) {
+            link.getOutput().writeByte(SegmentWorker.STOP);
+            link.getOutput().flush();
+        }
+        for (Link link : links) {
+            if (link.getInput().readByte() != SegmentWorker.STOP) {
+                throw new IOException("Segment worker did not acknowledge STOP");
+            }
+        }
+    }
+
+    // Moves every segment, then hands each vehicle that left a segment to the one it entered
+    private void advance(RemoteFleet[] remote) throws IOException {
+        for (Link link : links) {
+            DataOutputStream o = link.getOutput();
+            o.writeByte(SegmentWorker.ADVANCE);
+            o.writeInt(remote.length);
+            for (RemoteFleet fleet : remote) {
+                o.writeLong(fleet.pendingSteps);
+            }
+            o.flush();
+        }
+        for (RemoteFleet fleet : remote) {
+            fleet.pendingSteps = 0;
+        }
+        for (Link link : links) {
+            DataInputStream in = link.getInput();
+            expect(in, SegmentWorker.HANDOFF);
+            for (int n = in.readInt(); n > 0; n--) {
+                record.read(in);
+                record.write(batches[segmentOf(record.getPosition())].next());
+            }
+        }
+        for (int i = 0; i < links.length; i++) {
+            batches[i].sendTo(links[i].getOutput(), SegmentWorker.HANDOFF);
+            links[i].getOutput().flush();
+        }
+    }
+
+    /**
+     * Sums every vehicle's position in single-process order: fleet by fleet, and within a
+     * fleet by key, merging the workers' lists as they arrive.
+     * @return the sum and the number of vehicles.
+     */
+    private double[] positions(int fleetCount) throws IOException {
+        for (Link link : links) {
+            link.getOutput().writeByte(SegmentWorker.POSITIONS);
+            link.getOutput().flush();
+        }
+        int segments = links.length;
+        int[] remaining = new int[segments];
+        int[] headKey = new int[segments];
+        double[] headPosition = new double[segments];
+        double sum = 0;
+        long count = 0;
+        for (int f = 0; f < fleetCount; f++) {
+            for (int i = 0; i < segments; i++) {
+                remaining[i] = links[i].getInput().readInt();
+                count += remaining[i];
+                readHead(i, remaining, headKey, headPosition);
+            }
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < segments; i++) {
+                    if (remaining[i] >= 0 && (next < 0 || headKey[i] < headKey[next])) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                sum += headPosition[next];
+                readHead(next, remaining, headKey, headPosition);
+            }
+        }
+        return new double[] {sum, count};
+    }
+
+    // Reads a segment's next key and position; remaining drops to -1 once its list is used up
+    private void readHead(int i, int[] remaining, int[] headKey, double[] headPosition) throws IOException {
+        if (remaining[i]-- == 0) {
+            return;
+        }
+        DataInputStream in = links[i].getInput();
+        headKey[i] = in.readInt();
+        headPosition[i] = in.readDouble();
+    }
+
+    private int segmentOf(double position) {
+        int i = Arrays.binarySearch(boundaries, position);
+        return i >= 0 ? i + 1 : -i - 1; // a vehicle on a boundary belongs to the segment it starts
+    }
+
+    private static void expect(DataInputStream in, byte message) throws IOException {
+        byte got = in.readByte();
+        if (got != message) {
+            throw new IOException("Expected message " + message + " from segment worker, got " + got);
+        }
+    }
+
+    // A fleet on the workers: counts the steps it is due, the way FleetTask moves a local fleet
+    private static final class RemoteFleet implements MultiRateScheduler.Task {
+
+        private final long period;
+        private long nextStart;
+        long pendingSteps;
+
+        RemoteFleet(double timeInterval) {
+            this.period = Math.max(1, Math.round(timeInterval * 1000));
+        }
+
+        @Override
+        public long run(long now) {
+            throw new IllegalStateException("free-flow fleets only move at synchronization points");
+        }
+
+        @Override
+        public long syncTo(long time) {
+            if (time > nextStart) {
+                long steps = (time - nextStart + period - 1) / period;
+                pendingSteps += steps;
+                nextStart += steps * period;
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import exception.InvalidSignalIDException;
+import exception.InvalidTimerException;
+import exception.SimulationException;
+import vehicle.VehicleStore;
+
+/**
+ * Reads a scenario file one line at a time and hands each line's directive to a
+ * handler as soon as it is read, so a file of millions of vehicles never exists as
+ * text in memory. Lines are split without regex, and errors name the line they are on.
+ */
+final class ScenarioReader {
+
+    static final int MAX_TOKENS = 6; // the longest directive with its arguments
+
+    private static final int READ_BUFFER = 1 << 16;
+
+    /**
+     * Applies one directive. tokens[0] is the directive's name and tokens[1..count) its
+     * arguments; count is MAX_TOKENS + 1 if the line had more tokens than any directive.
+     */
+    @FunctionalInterface
+    interface Directives {
+        void apply(String[] tokens, int count)
+                throws IOException, SimulationException, InvalidSignalIDException, InvalidTimerException;
+    }
+
+    private ScenarioReader() {
+    }
+
+    /**
+     * Reads the scenario at path ("-" for standard input).
+     */
+    static void read(String path, Directives directives) throws IOException, SimulationException {
+        try (Reader reader = "-".equals(path)
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8)) {
+            read(new BufferedReader(reader, READ_BUFFER), directives);
+        }
+    }
+
+    static void read(BufferedReader in, Directives directives) throws IOException, SimulationException {
+        String[] tokens = new String[MAX_TOKENS];
+        String line;
+        int lineNo = 0;
+        while ((line = in.readLine()) != null) {
+            lineNo++;
+            int count = tokenize(line, tokens);
+            if (count == 0) {
+                continue;
+            }
+            try {
+                directives.apply(tokens, count);
+            } catch (NumberFormatException e) {
+                throw new SimulationException("Line " + lineNo + ": invalid number in \"" + line.trim() + "\"");
+            } catch (SimulationException | InvalidSignalIDException | InvalidTimerException e) {
+                throw new SimulationException("Line " + lineNo + ": " + e.getMessage());
+            }
+        }
+    }
+
+    static void expect(int count, int expected, String usage) throws SimulationException {
+        if (count != expected) {
+            throw new SimulationException("expected \"" + usage + "\"");
+        }
+    }
+
+    static byte typeCode(String type) throws SimulationException {
+        switch (type) {
+            case "car":
+                return VehicleStore.TYPE_CAR;
+            case "bus":
+                return VehicleStore.TYPE_BUS;
+            case "truck":
+                return VehicleStore.TYPE_TRUCK;
+            default:
+                throw new SimulationException("unknown vehicle type \"" + type + "\"");
+        }
+    }
+
+    // Splits a line on whitespace into tokens, ignoring comments; avoids regex so huge files parse quickly
+    private static int tokenize(String line, String[] tokens) {
+        int count = 0;
+        int i = 0;
+        int n = line.length();
+        while (i < n) {
+            char c = line.charAt(i);
+            if (c == '#') {
+                break;
+            }
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < n && !Character.isWhitespace(line.charAt(i)) && line.charAt(i) != '#') {
+                i++;
+            }
+            if (count == tokens.length) {
+                return tokens.length + 1; // too many tokens for any directive
+            }
+            tokens[count++] = line.substring(start, i);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,730 @@
+package simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import checkpoint.Checkpoint;
+import exception.InvalidSignalIDException;
+import exception.InvalidTimerException;
+import exception.SimulationException;
+import report.NullReporter;
+import report.SimulationReporter;
+import signal.SignalPlan;
+import signal.SignalRegistry;
+import signal.SignalScheduler;
+import signal.TrafficSignal;
+import trace.TraceRecorder;
+import vehicle.CarFollowingModel;
+import vehicle.FleetManager;
+import vehicle.MotionModel;
+import vehicle.VehicleStore;
+
+/**
+ * Runs a simulation described by a scenario file, without any interaction.
+ * ScenarioReader hands over each line as soon as it is read, so a fleet of millions of
+ * vehicles never exists as text in memory. Results are written as CSV, one line per
+ * reporting interval, while the simulation runs.
+ *
+ * Scenario format, one directive per line ('#' starts a comment):
+ *   duration 300        total simulated seconds (default 300)
+ *   step 5              seconds per step (default 5); must come before the first vehicle or fleet
+ *   report 12           steps per result line (default 12, one minute)
+ *   model following     how vehicles move: free (default, every vehicle on its own)
+ *                       or following (car-following with lane changes)
+ *   vehicle car c1      a vehicle: car, bus or truck, then its ID
+ *   fleet trucks 10     the vehicles that follow form a fleet of their own, moving every
+ *                       10 seconds (default: the scenario step); vehicles before the first
+ *                       fleet directive form the main fleet. Under the following model
+ *                       vehicles only follow vehicles of their own fleet
+ *   source car 2 3 in-  every 2 seconds, 3 new cars join the current fleet at the start of
+ *                       the road, with IDs in-0, in-1, ...; IDs must be unique within a fleet
+ *   sink 5000           vehicles of the current fleet leave the road once they reach 5000,
+ *                       checked at the start of each of the fleet's steps
+ *   signal A 500        a traffic signal, optionally with a stop line at road position 500;
+ *                       vehicles under the following model stop there on red and yellow
+ *   timers A 10 2 15    red, yellow and green seconds for a signal
+ *   timers A 30 2 5 600 the same, but from 600 seconds into the run on: the state the
+ *                       signal is in then keeps its deadline, and the roads into its
+ *                       intersection are repriced, which may re-route trackers
+ *   checkpoint run.ckpt 720   write a checkpoint to run.ckpt every 720 steps
+ *   trace run.trace 1   record every vehicle and signal to run.trace every step, with the
+ *                       trackers' intersection outcomes in between, for replay with
+ *                       TraceReader; a run resumed from a checkpoint is not traced
+ *   tracker t1 1        an intersection tracker in lane 1 (0-based) of the standard road,
+ *                       trying every other intersection, as IntersectionNetwork does
+ *   tracker t2 0 0 4    a tracker in lane 0 that follows the cheapest route from
+ *                       intersection 0 to intersection 4 of the road network below,
+ *                       passing every intersection on it
+ *   intersections 2     seconds between tracker moves, each one intersection on
+ *                       (default: the scenario step)
+ *   road 0 1 500 14     a road from intersection 0 to intersection 1 of the road network,
+ *                       500 long at speed 14, open to every lane; an optional last
+ *                       argument lists the lanes it is open to, e.g. 0,2
+ *   light 1 A           signal A stands at intersection 1: roads into it cost its
+ *                       expected red and yellow wait, so timers steer routes
+ *
+ * ScenarioTrackers takes the tracker, road, light and intersections directives. Routes
+ * are chosen when the scenario is loaded, with every signal's timers as the file leaves
+ * them. A timed timers change that makes another way cheaper re-routes each routed
+ * tracker that has not arrived, from the last intersection it passed.
+ *
+ * With trackers, each result line also counts the intersections they moved through and
+ * the non-existent ones they tried to use since the previous line.
+ *
+ * Each fleet, the signals and the trackers run on a MultiRateScheduler at their own rate,
+ * and result lines and checkpoints are its synchronization points. Between them the run is
+ * fast-forwarded rather than stepped whenever the movement is periodic, so long horizons
+ * cost little more than short ones.
+ *
+ * A checkpoint holds the run settings, the step reached and the full fleet and signal
+ * state, so resume() continues the run from exactly that step.
+ */
+public class ScenarioRunner {
+
+    private double duration = 300;
+    private double step = 5;
+    private int reportEvery = 12;
+    private String model = "free";
+    private String checkpointPath;
+    private long checkpointEvery;
+    private String tracePath;
+    private long traceEvery;
+    private long stepsDone;
+    private long pendingTransitions; // transitions since the last result line
+    private ScenarioTrackers trackers = new ScenarioTrackers();
+    private VehicleStore vehicles; // the fleet vehicle directives add to
+    private final List<String> fleetNames = new ArrayList<>();
+    private final List<VehicleStore> fleets = new ArrayList<>();
+    private final SignalRegistry registry = new SignalRegistry();
+    private SignalScheduler scheduler = new SignalScheduler();
+    private SignalPlan plan = new SignalPlan();
+    private final List<TrafficSignal> unscheduled = new ArrayList<>(); // read but not yet timed, in order
+    private final List<TimerChangeTask.Change> timerChanges = new ArrayList<>(); // in time order
+    private VehicleSink sink; // takes vehicle directives instead of the fleets when set
+    private final List<Source> sources = new ArrayList<>();
+    private final List<Sink> sinks = new ArrayList<>();
+    private FleetManager[] managers = new FleetManager[0]; // per fleet, null unless it has sources or sinks
+
+    /**
+     * Reads the scenario at path ("-" for standard input), runs it and writes results to out.
+     * Vehicle states reported during the run go to reporter.
+     */
+    public static void run(String path, PrintStream out, TickEngine engine, SimulationReporter reporter)
+            throws IOException, SimulationException {
+        ScenarioRunner runner = open(path);
+        runner.setReporter(reporter);
+        runner.simulate(out, engine);
+        reporter.flush();
+    }
+
+    // Reads a scenario without running it
+    static ScenarioRunner open(String path) throws IOException, SimulationException {
+        ScenarioRunner runner = new ScenarioRunner();
+        runner.load(path);
+        return runner;
+    }
+
+    void load(String path) throws IOException, SimulationException {
+        ScenarioReader.read(path, this::apply);
+        loaded();
+    }
+
+    private void load(BufferedReader in) throws IOException, SimulationException {
+        ScenarioReader.read(in, this::apply);
+        loaded();
+    }
+
+    /**
+     * Receives the vehicles of a scenario as they are read, in place of its fleets.
+     */
+    @FunctionalInterface
+    interface VehicleSink {
+        void vehicle(int fleet, byte type, String vehicleID) throws IOException;
+    }
+
+    /**
+     * Sends vehicle directives to the sink instead of adding them to the fleets, which
+     * then only say how many fleets there are and their time intervals. Set before load.
+     */
+    void setVehicleSink(VehicleSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * A copy of this scenario that shares nothing mutable with it: the fleets are forked,
+     * and the signals are recreated in a registry of their own with the same IDs, stop
+     * lines and timers, except for the signals given new timers (red, yellow, green).
+     * Checkpointing is left off.
+     */
+    ScenarioRunner variant(Map<String, int[]> timers) throws InvalidSignalIDException, InvalidTimerException {
+        ScenarioRunner copy = new ScenarioRunner();
+        copy.duration = duration;
+        copy.step = step;
+        copy.reportEvery = reportEvery;
+        copy.model = model;
+        for (int i = 0; i < fleets.size(); i++) {
+            copy.fleetNames.add(fleetNames.get(i));
+            copy.fleets.add(fleets.get(i).fork());
+        }
+        for (TrafficSignal ts : registry.snapshot()) {
+            TrafficSignal signal = new TrafficSignal(copy.registry, ts.getSignalID());
+            int[] t = timers.getOrDefault(ts.getSignalID(), ts.getTimers());
+            signal.setTimers(t[0], t[1], t[2]);
+            copy.scheduler.schedule(signal);
+        }
+        for (int i = 0; i < plan.size(); i++) {
+            copy.plan.place(copy.registry.lookup(plan.getSignal(i).getSignalID()), plan.getPosition(i));
+        }
+        for (Source source : sources) {
+            copy.sources.add(new Source(source.fleet, source.type, source.period, source.count, source.prefix, source.serial));
+        }
+        copy.sinks.addAll(sinks);
+        copy.timerChanges.addAll(timerChanges);
+        copy.trackers = trackers.copy();
+        try {
+            copy.setMotionModels();
+            copy.manageFleets();
+            copy.trackers.build(copy.registry); // routes follow the copy's own timers
+        } catch (SimulationException e) {
+            throw new IllegalStateException(e); // the model and the IDs were checked when this scenario was loaded
+        }
+        return copy;
+    }
+
+    double getDuration() {
+        return duration;
+    }
+
+    double getStep() {
+        return step;
+    }
+
+    int getReportEvery() {
+        return reportEvery;
+    }
+
+    String getModel() {
+        return model;
+    }
+
+    boolean isCheckpointing() {
+        return checkpointPath != null;
+    }
+
+    boolean isTracing() {
+        return tracePath != null;
+    }
+
+    boolean hasTimerChanges() {
+        return !timerChanges.isEmpty();
+    }
+
+    boolean hasFlows() {
+        return !sources.isEmpty() || !sinks.isEmpty();
+    }
+
+    boolean hasTrackers() {
+        return !trackers.isEmpty();
+    }
+
+    SignalScheduler getScheduler() {
+        return scheduler;
+    }
+
+    List<VehicleStore> getFleets() {
+        return fleets;
+    }
+
+    boolean hasSignal(String signalID) {
+        return registry.lookup(signalID) != null;
+    }
+
+    void setReporter(SimulationReporter reporter) {
+        for (VehicleStore fleet : fleets) {
+            fleet.setReporter(reporter);
+        }
+    }
+
+    /**
+     * Continues a run from a checkpoint written by a scenario with a checkpoint directive.
+     * Result lines pick up after the checkpointed step, and checkpoints keep being written
+     * with the original settings.
+     */
+    public static void resume(String checkpointFile, PrintStream out, TickEngine engine, SimulationReporter reporter)
+            throws IOException {
+        ScenarioRunner runner = new ScenarioRunner();
+        Checkpoint.load(Path.of(checkpointFile), in -> {
+            runner.duration = in.getDouble();
+            runner.step = in.getDouble();
+            runner.reportEvery = in.getInt();
+            runner.checkpointEvery = in.getLong();
+            runner.checkpointPath = in.getString();
+            runner.stepsDone = in.getLong();
+            runner.pendingTransitions = in.getLong();
+            runner.model = in.getString();
+            int fleetCount = in.getInt();
+            if (fleetCount <= 0) {
+                throw new IOException("Corrupt checkpoint: " + fleetCount + " fleets");
+            }
+            for (int i = 0; i < fleetCount; i++) {
+                runner.fleetNames.add(in.getString());
+                runner.fleets.add(VehicleStore.readSnapshot(in));
+            }
+            runner.scheduler = SignalScheduler.readSnapshot(in, runner.registry);
+            runner.plan = SignalPlan.readSnapshot(in, runner.registry);
+            for (int n = in.getInt(); n > 0; n--) {
+                runner.sources.add(new Source(in.getInt(), in.getByte(), in.getLong(), in.getInt(), in.getString(),
+                        in.getLong()));
+            }
+            for (int n = in.getInt(); n > 0; n--) {
+                runner.sinks.add(new Sink(in.getInt(), in.getDouble()));
+            }
+            for (int n = in.getInt(); n > 0; n--) {
+                runner.timerChanges.add(new TimerChangeTask.Change(in.getLong(), in.getString(), in.getInt(), in.getInt(),
+                        in.getInt()));
+            }
+            runner.trackers = ScenarioTrackers.readSnapshot(in, runner.registry);
+            try {
+                runner.setMotionModels();
+                runner.manageFleets();
+            } catch (SimulationException e) {
+                throw new IOException("Corrupt checkpoint: " + e.getMessage(), e);
+            }
+            return runner;
+        });
+        runner.setReporter(reporter);
+        runner.simulate(out, engine);
+        reporter.flush();
+    }
+
+    // Completes the scenario once every directive is applied
+    private void loaded() throws SimulationException {
+        if (fleets.isEmpty()) {
+            addFleet("main", new VehicleStore(0, step));
+        }
+        for (TrafficSignal ts : unscheduled) {
+            scheduler.schedule(ts);
+        }
+        unscheduled.clear();
+        setMotionModels();
+        manageFleets();
+        trackers.build(registry);
+    }
+
+    private void apply(String[] tokens, int count)
+            throws IOException, SimulationException, InvalidSignalIDException, InvalidTimerException {
+        String directive = tokens[0];
+        if (trackers.apply(tokens, count, registry)) {
+            return;
+        }
+        switch (directive) {
+            case "duration":
+                ScenarioReader.expect(count, 2, "duration <seconds>");
+                duration = Double.parseDouble(tokens[1]);
+                if (duration <= 0) throw new SimulationException("duration must be positive");
+                break;
+            case "step":
+                ScenarioReader.expect(count, 2, "step <seconds>");
+                if (!fleets.isEmpty()) throw new SimulationException("step must come before the first vehicle or fleet");
+                step = Double.parseDouble(tokens[1]);
+                if (step <= 0) throw new SimulationException("step must be positive");
+                break;
+            case "report":
+                ScenarioReader.expect(count, 2, "report <steps>");
+                reportEvery = Integer.parseInt(tokens[1]);
+                if (reportEvery <= 0) throw new SimulationException("report interval must be positive");
+                break;
+            case "model":
+                ScenarioReader.expect(count, 2, "model <free|following>");
+                motionModel(tokens[1]);
+                model = tokens[1];
+                break;
+            case "vehicle":
+                ScenarioReader.expect(count, 3, "vehicle <car|bus|truck> <id>");
+                if (fleets.isEmpty()) {
+                    addFleet("main", new VehicleStore(1024, step));
+                }
+                if (sink != null) {
+                    sink.vehicle(fleets.size() - 1, ScenarioReader.typeCode(tokens[1]), tokens[2]);
+                } else {
+                    vehicles.add(ScenarioReader.typeCode(tokens[1]), tokens[2]);
+                }
+                break;
+            case "fleet":
+                if (count != 2) {
+                    ScenarioReader.expect(count, 3, "fleet <name> [step]");
+                }
+                if (fleets.isEmpty()) {
+                    addFleet("main", new VehicleStore(0, step));
+                }
+                if (fleetNames.contains(tokens[1])) throw new SimulationException("duplicate fleet \"" + tokens[1] + "\"");
+                double fleetStep = count == 3 ? Double.parseDouble(tokens[2]) : step;
+                if (!(fleetStep >= 0.001)) throw new SimulationException("fleet step must be at least 0.001");
+                addFleet(tokens[1], new VehicleStore(1024, fleetStep));
+                break;
+            case "source":
+                ScenarioReader.expect(count, 5, "source <car|bus|truck> <seconds> <count> <id-prefix>");
+                if (fleets.isEmpty()) {
+                    addFleet("main", new VehicleStore(0, step));
+                }
+                byte sourceType = ScenarioReader.typeCode(tokens[1]);
+                long period = Math.round(Double.parseDouble(tokens[2]) * 1000);
+                if (period <= 0) throw new SimulationException("source interval must be at least 0.001 seconds");
+                int sourceCount = Integer.parseInt(tokens[3]);
+                if (sourceCount <= 0) throw new SimulationException("source count must be positive");
+                sources.add(new Source(fleets.size() - 1, sourceType, period, sourceCount, tokens[4], 0));
+                break;
+            case "sink":
+                ScenarioReader.expect(count, 2, "sink <position>");
+                if (fleets.isEmpty()) {
+                    addFleet("main", new VehicleStore(0, step));
+                }
+                double sinkPosition = Double.parseDouble(tokens[1]);
+                if (Double.isNaN(sinkPosition)) throw new SimulationException("invalid sink position " + tokens[1]);
+                sinks.add(new Sink(fleets.size() - 1, sinkPosition));
+                break;
+            case "signal":
+                if (count != 2) {
+                    ScenarioReader.expect(count, 3, "signal <id> [position]");
+                }
+                TrafficSignal placed = new TrafficSignal(registry, tokens[1]);
+                unscheduled.add(placed); // timed once loaded, so later timers directives cover its first state
+                if (count == 3) {
+                    double position = Double.parseDouble(tokens[2]);
+                    if (Double.isNaN(position) || Double.isInfinite(position)) {
+                        throw new SimulationException("invalid signal position " + tokens[2]);
+                    }
+                    plan.place(placed, position);
+                }
+                break;
+            case "checkpoint":
+                ScenarioReader.expect(count, 3, "checkpoint <path> <steps>");
+                checkpointPath = tokens[1];
+                checkpointEvery = Long.parseLong(tokens[2]);
+                if (checkpointEvery <= 0) throw new SimulationException("checkpoint interval must be positive");
+                break;
+            case "trace":
+                ScenarioReader.expect(count, 3, "trace <path> <steps>");
+                tracePath = tokens[1];
+                traceEvery = Long.parseLong(tokens[2]);
+                if (traceEvery <= 0) throw new SimulationException("trace interval must be positive");
+                break;
+            case "timers":
+                if (count != 5) {
+                    ScenarioReader.expect(count, 6, "timers <id> <red> <yellow> <green> [from-seconds]");
+                }
+                TrafficSignal ts = registry.lookup(tokens[1]);
+                if (ts == null) throw new SimulationException("unknown signal \"" + tokens[1] + "\"");
+                int red = Integer.parseInt(tokens[2]);
+                int yellow = Integer.parseInt(tokens[3]);
+                int green = Integer.parseInt(tokens[4]);
+                if (count == 5) {
+                    ts.setTimers(red, yellow, green);
+                    break;
+                }
+                if (red <= 0 || yellow <= 0 || green <= 0) {
+                    throw InvalidTimerException.NON_POSITIVE;
+                }
+                long at = Math.round(Double.parseDouble(tokens[5]) * 1000);
+                if (at < 0) throw new SimulationException("timer change time must not be negative");
+                int index = timerChanges.size();
+                while (index > 0 && timerChanges.get(index - 1).time > at) {
+                    index--; // changes at the same moment keep their order in the file
+                }
+                timerChanges.add(index, new TimerChangeTask.Change(at, tokens[1], red, yellow, green));
+                break;
+            default:
+                throw new SimulationException("unknown directive \"" + directive + "\"");
+        }
+    }
+
+    void simulate(PrintStream out, TickEngine engine) throws IOException {
+        boolean tracked = hasTrackers();
+        out.println("step,time_s,vehicles,mean_position,signal_transitions" + (tracked ? ScenarioTrackers.COLUMNS : ""));
+        simulate(engine, (s, meanPosition, transitions) -> {
+            String line = s + "," + (s * step) + "," + vehicleCount() + "," + meanPosition + "," + transitions;
+            if (tracked) {
+                line += trackers.takeColumns();
+            }
+            out.println(line);
+            if (checkpointPath != null) {
+                out.flush(); // results up to a checkpoint are on disk before the checkpoint is
+            }
+            return true;
+        });
+        out.flush();
+    }
+
+    /**
+     * Runs the rest of the scenario, handing each result line to the listener.
+     * @return false if the listener stopped the run early.
+     */
+    boolean simulate(TickEngine engine, IntervalListener listener) throws IOException {
+        final long totalSteps = Math.round(duration / step);
+        final long stepMillis = Math.round(step * 1000);
+        MultiRateScheduler clock = new MultiRateScheduler(stepsDone * stepMillis);
+        boolean watched = model.equals("following");
+        SignalTask signals = new SignalTask(scheduler, engine, watched);
+        clock.add("signals", signals, signals.nextDue()); // first, so signals change before vehicles look at them
+        long after = clock.getTime() == 0 ? 0 : clock.getTime() + 1; // a resumed run already did what fell due when it stopped
+        if (!timerChanges.isEmpty()) {
+            TimerChangeTask retimes = new TimerChangeTask(signals, registry, timerChanges);
+            clock.add("timer changes", retimes, retimes.nextDue(after));
+        }
+        FleetTask[] movers = new FleetTask[fleets.size()];
+        for (int i = 0; i < movers.length; i++) {
+            movers[i] = new FleetTask(fleets.get(i), engine, clock.getTime());
+        }
+        // sinks, then sources, then the fleets: at any moment vehicles leave, then join, then move
+        for (Sink sink : sinks) {
+            SinkTask task = new SinkTask(managers[sink.fleet], movers[sink.fleet], sink.position);
+            clock.add("sink " + sink.position, task, task.nextDue(after));
+        }
+        SourceTask[] sourceTasks = new SourceTask[sources.size()];
+        for (int i = 0; i < sourceTasks.length; i++) {
+            Source source = sources.get(i);
+            sourceTasks[i] = new SourceTask(managers[source.fleet], movers[source.fleet], source.type, source.period,
+                    source.count, source.prefix, source.serial);
+            clock.add("source " + source.prefix, sourceTasks[i], sourceTasks[i].nextDue(after));
+        }
+        for (int i = 0; i < movers.length; i++) {
+            clock.add(fleetNames.get(i), movers[i], movers[i].nextDue());
+        }
+        trackers.schedule(clock, engine, stepMillis, after);
+        List<TrafficSignal> traced = registry.snapshot();
+        try (TraceRecorder trace = tracePath == null ? null : new TraceRecorder(Path.of(tracePath))) {
+            if (trace != null) {
+                trackers.setTraceRecorder(trace); // their outcomes go into the next frame
+                trace.frame(stepsDone, fleets, traced);
+            }
+            while (stepsDone < totalSteps) {
+                // jump straight to the next result line, checkpoint, trace frame or the end, whichever comes first
+                long s = Math.min(totalSteps, (stepsDone / reportEvery + 1) * reportEvery);
+                if (checkpointPath != null) {
+                    s = Math.min(s, (stepsDone / checkpointEvery + 1) * checkpointEvery);
+                }
+                if (trace != null) {
+                    s = Math.min(s, (stepsDone / traceEvery + 1) * traceEvery);
+                }
+                try {
+                    clock.advanceTo(s * stepMillis);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Cannot continue the run: " + e.getMessage(), e); // a source reused a vehicle ID
+                }
+                pendingTransitions += signals.takeFired();
+                trackers.collect();
+                for (int i = 0; i < sourceTasks.length; i++) {
+                    sources.get(i).serial = sourceTasks[i].getSerial();
+                }
+                stepsDone = s;
+                if (trace != null && (s % traceEvery == 0 || s == totalSteps)) {
+                    trace.frame(s, fleets, traced);
+                }
+                if (s % reportEvery == 0 || s == totalSteps) {
+                    long transitions = pendingTransitions;
+                    pendingTransitions = 0;
+                    if (!listener.interval(s, meanPosition(), transitions)) {
+                        return false;
+                    }
+                }
+                if (checkpointPath != null && s % checkpointEvery == 0 && s < totalSteps) {
+                    writeCheckpoint();
+                }
+            }
+        } finally {
+            trackers.setTraceRecorder(null); // the trace is closed
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    interface IntervalListener {
+        /**
+         * Called at every result line.
+         * @return false to stop the run.
+         */
+        boolean interval(long step, double meanPosition, long transitions) throws IOException;
+    }
+
+    // Runs between two steps; bulk column copies into the mapped file keep the pause short
+    private void writeCheckpoint() throws IOException {
+        Checkpoint.save(Path.of(checkpointPath), false, out -> {
+            out.putDouble(duration);
+            out.putDouble(step);
+            out.putInt(reportEvery);
+            out.putLong(checkpointEvery);
+            out.putString(checkpointPath);
+            out.putLong(stepsDone);
+            out.putLong(pendingTransitions);
+            out.putString(model);
+            out.putInt(fleets.size());
+            for (int i = 0; i < fleets.size(); i++) {
+                out.putString(fleetNames.get(i));
+                fleets.get(i).writeSnapshot(out);
+            }
+            scheduler.writeSnapshot(out);
+            plan.writeSnapshot(out);
+            out.putInt(sources.size());
+            for (Source source : sources) {
+                out.putInt(source.fleet);
+                out.putByte(source.type);
+                out.putLong(source.period);
+                out.putInt(source.count);
+                out.putString(source.prefix);
+                out.putLong(source.serial);
+            }
+            out.putInt(sinks.size());
+            for (Sink sink : sinks) {
+                out.putInt(sink.fleet);
+                out.putDouble(sink.position);
+            }
+            out.putInt(timerChanges.size());
+            for (TimerChangeTask.Change change : timerChanges) {
+                out.putLong(change.time);
+                out.putString(change.signalID);
+                out.putInt(change.red);
+                out.putInt(change.yellow);
+                out.putInt(change.green);
+            }
+            trackers.writeSnapshot(out);
+        });
+    }
+
+    private double meanPosition() {
+        int n = vehicleCount();
+        if (n == 0) {
+            return 0.0;
+        }
+        double sum = 0;
+        for (VehicleStore fleet : fleets) {
+            for (int i = 0; i < fleet.size(); i++) {
+                sum += fleet.getCurrentPosition(i);
+            }
+        }
+        return sum / n;
+    }
+
+    private int vehicleCount() {
+        int n = 0;
+        for (VehicleStore fleet : fleets) {
+            n += fleet.size();
+        }
+        return n;
+    }
+
+    private void addFleet(String name, VehicleStore fleet) {
+        fleetNames.add(name);
+        fleets.add(fleet);
+        vehicles = fleet;
+    }
+
+    // Fleets with sources or sinks spawn and retire vehicles through a FleetManager
+    private void manageFleets() throws SimulationException {
+        managers = new FleetManager[fleets.size()];
+        try {
+            for (Source source : sources) {
+                manage(source.fleet);
+            }
+            for (Sink sink : sinks) {
+                manage(sink.fleet);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new SimulationException(e.getMessage() + " in a fleet with sources or sinks");
+        }
+    }
+
+    private void manage(int fleet) {
+        if (fleet < 0 || fleet >= fleets.size()) {
+            throw new IllegalArgumentException("Unknown fleet " + fleet);
+        }
+        if (managers[fleet] == null) {
+            managers[fleet] = new FleetManager(fleets.get(fleet));
+        }
+    }
+
+    // Each fleet gets a model of its own, as models keep per-fleet state
+    private void setMotionModels() throws SimulationException {
+        for (VehicleStore fleet : fleets) {
+            fleet.setMotionModel(motionModel(model));
+        }
+    }
+
+    // Null stands for the store's default free-flow movement
+    private MotionModel motionModel(String name) throws SimulationException {
+        switch (name) {
+            case "free":
+                return null;
+            case "following":
+                return new CarFollowingModel(plan);
+            default:
+                throw new SimulationException("unknown motion model \"" + name + "\"");
+        }
+    }
+
+    // Where and how fast a source adds vehicles; serial is the number the next ID ends in
+    private static final class Source {
+        final int fleet;
+        final byte type;
+        final long period;
+        final int count;
+        final String prefix;
+        long serial;
+
+        Source(int fleet, byte type, long period, int count, String prefix, long serial) {
+            this.fleet = fleet;
+            this.type = type;
+            this.period = period;
+            this.count = count;
+            this.prefix = prefix;
+            this.serial = serial;
+        }
+    }
+
+    private static final class Sink {
+        final int fleet;
+        final double position;
+
+        Sink(int fleet, double position) {
+            this.fleet = fleet;
+            this.position = position;
+        }
+    }
+
+    // Main method for testing this class individually: a signal's first state takes its timers
+    public static void main(String[] args)
+            throws IOException, SimulationException, InvalidSignalIDException, InvalidTimerException {
+        String scenario = "duration 60\nstep 5\nvehicle car c1\nsignal A\ntimers A 30 5 10\n";
+        ScenarioRunner runner = new ScenarioRunner();
+        runner.load(new BufferedReader(new StringReader(scenario.replace("duration 60", "duration 10"))));
+        runner.setReporter(NullReporter.INSTANCE);
+        runner.simulate(new SequentialTickEngine(), (s, meanPosition, transitions) -> true);
+        String state = runner.registry.lookup("A").getCurrentState();
+        if (!state.equals("red")) {
+            throw new AssertionError("signal A is " + state + " at 10 s, expected red for 30 s");
+        }
+        long[] transitions = new long[2];
+        ScenarioRunner batch = new ScenarioRunner();
+        batch.load(new BufferedReader(new StringReader(scenario)));
+        ScenarioRunner baseline = batch.variant(Map.of());
+        batch.setReporter(NullReporter.INSTANCE);
+        baseline.setReporter(NullReporter.INSTANCE);
+        batch.simulate(new SequentialTickEngine(), (s, meanPosition, fired) -> {
+            transitions[0] += fired;
+            return true;
+        });
+        baseline.simulate(new SequentialTickEngine(), (s, meanPosition, fired) -> {
+            transitions[1] += fired;
+            return true;
+        });
+        if (transitions[0] != 3 || transitions[1] != 3) {
+            throw new AssertionError("first minute had " + transitions[0] + " transitions in batch and "
+                    + transitions[1] + " in a sweep variant, expected 3");
+        }
+        System.out.println("Signal A at 10 s: " + state + "; transitions in the first minute: " + transitions[0]);
+    }
+}
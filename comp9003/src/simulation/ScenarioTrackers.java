@@ -0,0 +1,437 @@
+package simulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import checkpoint.SnapshotInput;
+import checkpoint.SnapshotOutput;
+import exception.SimulationException;
+import network.IntersectionNetwork;
+import network.RoadGraph;
+import network.RoadLayout;
+import network.Route;
+import network.RouteService;
+import signal.SignalRegistry;
+import trace.TraceRecorder;
+
+/**
+ * The intersection trackers of a scenario, and the road network routed ones follow.
+ * Takes the tracker, road, light and intersections directives, builds the trackers once
+ * the scenario is loaded, runs them as an IntersectionTask and counts their moves for
+ * the result lines.
+ *
+ * The graph listens to the signals at its intersections. When their timers change the
+ * route cache drops the trees the change affects, and before the trackers next move each
+ * routed one that has not arrived asks for the cheapest way on from the last intersection
+ * it passed. If that way differs from the rest of its route, the tracker carries on over
+ * the new one, keeping the intersections it has passed and its progress.
+ */
+final class ScenarioTrackers {
+
+    /**
+     * Extra result columns, present only when the scenario has trackers.
+     */
+    static final String COLUMNS = ",intersections,invalid_intersections";
+
+    private static final int LANES = RoadLayout.standard().getNumLanes(); // of trackers' roads
+    private static final int ROUTE_CACHE = 64; // shortest-path trees kept while routing trackers
+
+    private long period; // milliseconds between tracker moves, 0 for the scenario step
+    private final List<TrackerSpec> specs = new ArrayList<>();
+    private final List<Road> roads = new ArrayList<>();
+    private final List<Light> lights = new ArrayList<>();
+    private final List<IntersectionNetwork> trackers = new ArrayList<>(); // built from the specs once loaded
+    private final List<Route> paths = new ArrayList<>(); // per tracker, the way it goes; null if not routed
+    private RouteTable table; // null until built
+    private boolean costsChanged; // since the routed trackers were last checked
+    private IntersectionTask checks; // null until scheduled
+    private long pendingMoves; // tracker moves since the last result line
+    private long pendingMissing; // of which to non-existent intersections
+
+    boolean isEmpty() {
+        return specs.isEmpty();
+    }
+
+    /**
+     * Applies the directive in tokens if it is one of the trackers'.
+     * @return false if it is not.
+     */
+    boolean apply(String[] tokens, int count, SignalRegistry registry) throws SimulationException {
+        switch (tokens[0]) {
+            case "tracker":
+                if (count != 3) {
+                    ScenarioReader.expect(count, 5, "tracker <id> <lane> [from to]");
+                }
+                for (TrackerSpec spec : specs) {
+                    if (spec.id.equals(tokens[1])) throw new SimulationException("duplicate tracker \"" + tokens[1] + "\"");
+                }
+                int lane = Integer.parseInt(tokens[2]);
+                if (lane < 0 || lane >= LANES) throw new SimulationException("tracker lane must be between 0 and " + (LANES - 1));
+                int origin = count == 5 ? Integer.parseInt(tokens[3]) : -1;
+                int destination = count == 5 ? Integer.parseInt(tokens[4]) : -1;
+                if (count == 5 && (origin < 0 || destination < 0)) throw new SimulationException("intersections are numbered from 0");
+                specs.add(new TrackerSpec(tokens[1], lane, origin, destination));
+                return true;
+            case "road":
+                if (count != 5) {
+                    ScenarioReader.expect(count, 6, "road <from> <to> <length> <speed> [lanes]");
+                }
+                int from = Integer.parseInt(tokens[1]);
+                int to = Integer.parseInt(tokens[2]);
+                if (from < 0 || to < 0) throw new SimulationException("intersections are numbered from 0");
+                double length = Double.parseDouble(tokens[3]);
+                double speed = Double.parseDouble(tokens[4]);
+                if (!(length > 0) || !(speed > 0) || Double.isInfinite(length) || Double.isInfinite(speed)) {
+                    throw new SimulationException("road length and speed must be positive");
+                }
+                roads.add(new Road(from, to, length, speed, count == 6 ? laneMask(tokens[5]) : -1));
+                return true;
+            case "light":
+                ScenarioReader.expect(count, 3, "light <intersection> <signal-id>");
+                int node = Integer.parseInt(tokens[1]);
+                if (node < 0) throw new SimulationException("intersections are numbered from 0");
+                if (registry.lookup(tokens[2]) == null) throw new SimulationException("unknown signal \"" + tokens[2] + "\"");
+                lights.add(new Light(node, tokens[2]));
+                return true;
+            case "intersections":
+                ScenarioReader.expect(count, 2, "intersections <seconds>");
+                period = Math.round(Double.parseDouble(tokens[1]) * 1000);
+                if (period <= 0) throw new SimulationException("intersection interval must be at least 0.001 seconds");
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Creates the trackers; routed ones take the cheapest route as the signals are timed now.
+     */
+    void build(SignalRegistry registry) throws SimulationException {
+        trackers.clear();
+        paths.clear();
+        table = routeTable(registry);
+        for (TrackerSpec spec : specs) {
+            Route path = table.routeOf(spec);
+            RoadLayout road = table.roadOf(path);
+            trackers.add(new IntersectionNetwork(road, spec.patternOn(road), spec.id, spec.lane));
+            paths.add(path);
+        }
+        listen();
+    }
+
+    /**
+     * The same declarations with no trackers built yet; build them with the copy's signals.
+     */
+    ScenarioTrackers copy() {
+        ScenarioTrackers copy = new ScenarioTrackers();
+        copy.period = period;
+        copy.specs.addAll(specs);
+        copy.roads.addAll(roads);
+        copy.lights.addAll(lights);
+        return copy;
+    }
+
+    /**
+     * Adds the trackers to the clock as one task, moving every period or else every step,
+     * first at or after the given time. Moves are counted in the engine's metrics if it has any.
+     */
+    void schedule(MultiRateScheduler clock, TickEngine engine, long stepMillis, long after) {
+        if (trackers.isEmpty()) {
+            return;
+        }
+        if (engine instanceof MeteredTickEngine) {
+            for (IntersectionNetwork tracker : trackers) {
+                tracker.setMetrics(((MeteredTickEngine) engine).getMetrics());
+            }
+        }
+        checks = new IntersectionTask(trackers, period > 0 ? period : stepMillis);
+        clock.add("intersections", new MultiRateScheduler.Task() {
+            @Override
+            public long run(long now) {
+                reroute();
+                return checks.run(now);
+            }
+
+            @Override
+            public long syncTo(long time) {
+                reroute();
+                return checks.syncTo(time);
+            }
+        }, checks.nextDue(after));
+    }
+
+    /**
+     * Records the trackers' outcomes in the given trace, or stops recording them if null.
+     */
+    void setTraceRecorder(TraceRecorder trace) {
+        for (IntersectionNetwork tracker : trackers) {
+            tracker.setTraceRecorder(trace);
+        }
+    }
+
+    /**
+     * Adds the moves made since the last call to the next result line; call after each advance.
+     */
+    void collect() {
+        if (checks != null) {
+            pendingMoves += checks.takeMoves();
+            pendingMissing += checks.takeMissing();
+        }
+    }
+
+    /**
+     * The values of COLUMNS for a result line, counting from the previous one.
+     */
+    String takeColumns() {
+        String columns = "," + pendingMoves + "," + pendingMissing;
+        pendingMoves = 0;
+        pendingMissing = 0;
+        return columns;
+    }
+
+    void writeSnapshot(SnapshotOutput out) throws IOException {
+        out.putLong(period);
+        out.putLong(pendingMoves);
+        out.putLong(pendingMissing);
+        out.putInt(roads.size());
+        for (Road road : roads) {
+            out.putInt(road.from);
+            out.putInt(road.to);
+            out.putDouble(road.length);
+            out.putDouble(road.speed);
+            out.putInt(road.lanes);
+        }
+        out.putInt(lights.size());
+        for (Light light : lights) {
+            out.putInt(light.node);
+            out.putString(light.signalID);
+        }
+        out.putInt(specs.size());
+        for (TrackerSpec spec : specs) {
+            out.putString(spec.id);
+            out.putInt(spec.lane);
+            out.putInt(spec.from);
+            out.putInt(spec.to);
+        }
+        for (int i = 0; i < trackers.size(); i++) {
+            Route path = paths.get(i);
+            if (path != null) {
+                out.putInt(path.size() - 1); // the way it goes, as it may have been re-routed
+                for (int e = 0; e < path.size() - 1; e++) {
+                    out.putInt(path.getEdge(e));
+                }
+            }
+            trackers.get(i).writeSnapshot(out);
+        }
+    }
+
+    /**
+     * Reads what writeSnapshot wrote, routing over the given signals as restored.
+     */
+    static ScenarioTrackers readSnapshot(SnapshotInput in, SignalRegistry registry) throws IOException {
+        ScenarioTrackers t = new ScenarioTrackers();
+        t.period = in.getLong();
+        t.pendingMoves = in.getLong();
+        t.pendingMissing = in.getLong();
+        for (int n = in.getInt(); n > 0; n--) {
+            t.roads.add(new Road(in.getInt(), in.getInt(), in.getDouble(), in.getDouble(), in.getInt()));
+        }
+        for (int n = in.getInt(); n > 0; n--) {
+            t.lights.add(new Light(in.getInt(), in.getString()));
+        }
+        for (int n = in.getInt(); n > 0; n--) {
+            t.specs.add(new TrackerSpec(in.getString(), in.getInt(), in.getInt(), in.getInt()));
+        }
+        try {
+            t.table = t.routeTable(registry);
+            for (TrackerSpec spec : t.specs) {
+                Route path = null;
+                if (spec.from >= 0) {
+                    if (t.table.graph == null) {
+                        throw new IOException("Corrupt checkpoint: tracker " + spec.id + " has a route but there are no roads");
+                    }
+                    int[] edges = new int[in.getInt()];
+                    for (int e = 0; e < edges.length; e++) {
+                        edges[e] = in.getInt();
+                    }
+                    path = Route.along(t.table.graph, spec.from, edges);
+                }
+                RoadLayout road = t.table.roadOf(path);
+                IntersectionNetwork tracker = IntersectionNetwork.readSnapshot(in, road, spec.patternOn(road));
+                if (!tracker.getVehicleId().equals(spec.id)) {
+                    throw new IOException("Corrupt checkpoint: tracker " + tracker.getVehicleId() + " where " + spec.id + " was expected");
+                }
+                t.trackers.add(tracker);
+                t.paths.add(path);
+            }
+        } catch (SimulationException | IllegalArgumentException e) {
+            throw new IOException("Corrupt checkpoint: " + e.getMessage(), e);
+        }
+        t.listen();
+        return t;
+    }
+
+    // Notes every cost change from now on; the route cache hears of it first, as it listened first
+    private void listen() {
+        if (table.graph != null) {
+            table.graph.addListener((edge, oldCost, newCost) -> costsChanged = true);
+        }
+        costsChanged = false;
+    }
+
+    // Moves each routed tracker that has not arrived onto the cheapest way on, if costs have changed
+    private void reroute() {
+        if (!costsChanged) {
+            return;
+        }
+        costsChanged = false;
+        for (int i = 0; i < trackers.size(); i++) {
+            Route path = paths.get(i);
+            IntersectionNetwork tracker = trackers.get(i);
+            int next = tracker.getCurrentIntersectionIndex();
+            if (path == null || next >= path.size()) {
+                continue;
+            }
+            int at = Math.max(next - 1, 0); // the last intersection passed, or the origin
+            TrackerSpec spec = specs.get(i);
+            Route rest = table.routes.route(path.getNode(at), spec.to, 1 << spec.lane);
+            if (rest == null || follows(path, at, rest)) {
+                continue;
+            }
+            Route detour = path.detour(at, rest, table.graph);
+            RoadLayout road = table.roadOf(detour);
+            trackers.set(i, tracker.onRoad(road, spec.patternOn(road)));
+            paths.set(i, detour);
+        }
+    }
+
+    // Whether rest goes the way path goes from its node at on
+    private static boolean follows(Route path, int at, Route rest) {
+        if (rest.size() != path.size() - at) {
+            return false;
+        }
+        for (int e = 0; e < rest.size() - 1; e++) {
+            if (rest.getEdge(e) != path.getEdge(at + e)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The road network with its lights, and the routes found on it so far
+    private RouteTable routeTable(SignalRegistry registry) throws SimulationException {
+        if (roads.isEmpty()) {
+            return new RouteTable(null);
+        }
+        int nodes = 0;
+        for (Road road : roads) {
+            nodes = Math.max(nodes, Math.max(road.from, road.to) + 1);
+        }
+        RoadGraph.Builder builder = new RoadGraph.Builder(nodes);
+        for (Road road : roads) {
+            builder.addEdge(road.from, road.to, road.length, road.speed, road.lanes);
+        }
+        RoadGraph graph = builder.build();
+        for (Light light : lights) {
+            if (light.node >= nodes) throw new SimulationException("light at intersection " + light.node + ", which no road reaches");
+            graph.setSignal(light.node, registry.lookup(light.signalID));
+        }
+        return new RouteTable(graph);
+    }
+
+    // Parses a lane list such as 0,2 into a lane mask
+    private static int laneMask(String list) throws SimulationException {
+        int mask = 0;
+        for (String lane : list.split(",")) {
+            int l = Integer.parseInt(lane.trim());
+            if (l < 0 || l >= LANES) throw new SimulationException("road lanes must be between 0 and " + (LANES - 1));
+            mask |= 1 << l;
+        }
+        return mask;
+    }
+
+    // A tracker as declared: on the standard road when from is -1, else routed from..to
+    private static final class TrackerSpec {
+        final String id;
+        final int lane;
+        final int from;
+        final int to;
+
+        TrackerSpec(String id, int lane, int from, int to) {
+            this.id = id;
+            this.lane = lane;
+            this.from = from;
+            this.to = to;
+        }
+
+        // Routed trackers pass every intersection of their route, the others every other one
+        long[] patternOn(RoadLayout road) {
+            return from < 0 ? road.alternatingPattern() : road.fullPattern();
+        }
+    }
+
+    // A road of the road network; lanes is a mask, -1 for every lane
+    private static final class Road {
+        final int from;
+        final int to;
+        final double length;
+        final double speed;
+        final int lanes;
+
+        Road(int from, int to, double length, double speed, int lanes) {
+            this.from = from;
+            this.to = to;
+            this.length = length;
+            this.speed = speed;
+            this.lanes = lanes;
+        }
+    }
+
+    private static final class Light {
+        final int node;
+        final String signalID;
+
+        Light(int node, String signalID) {
+            this.node = node;
+            this.signalID = signalID;
+        }
+    }
+
+    // Routes trackers over the road network, one road per distinct route
+    private static final class RouteTable {
+        final RoadGraph graph; // null without roads
+        final RouteService routes;
+        final Map<Route, RoadLayout> layouts = new IdentityHashMap<>(); // routes are shared, so identity will do
+
+        RouteTable(RoadGraph graph) {
+            this.graph = graph;
+            this.routes = graph == null ? null : new RouteService(graph, ROUTE_CACHE);
+        }
+
+        // The tracker's route, or null if it is not routed
+        Route routeOf(TrackerSpec spec) throws SimulationException {
+            if (spec.from < 0) {
+                return null;
+            }
+            if (graph == null) {
+                throw new SimulationException("tracker \"" + spec.id + "\" has a route but the scenario has no roads");
+            }
+            if (spec.from >= graph.getNumNodes() || spec.to >= graph.getNumNodes()) {
+                throw new SimulationException("tracker \"" + spec.id + "\" is routed to an intersection no road reaches");
+            }
+            Route route = routes.route(spec.from, spec.to, 1 << spec.lane);
+            if (route == null) {
+                throw new SimulationException("no route for tracker \"" + spec.id + "\" from " + spec.from + " to " + spec.to
+                        + " in lane " + spec.lane);
+            }
+            return route;
+        }
+
+        // The road a tracker on the route passes along; the standard road if there is no route
+        RoadLayout roadOf(Route route) {
+            return route == null ? RoadLayout.standard() : layouts.computeIfAbsent(route, r -> r.toLayout(graph, LANES));
+        }
+    }
+}
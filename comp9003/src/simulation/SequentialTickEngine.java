@@ -0,0 +1,21 @@
+package simulation;
+
+import signal.SignalScheduler;
+import vehicle.VehicleStore;
+
+/**
+ * Runs every step on the calling thread.
+ */
+public class SequentialTickEngine implements TickEngine {
+
+    @Override
+    public int step(VehicleStore vehicles, SignalScheduler signals) {
+        moveVehicles(vehicles);
+        return signals.advanceBy(vehicles.getTimeInterval());
+    }
+
+    @Override
+    public int getWorkers() {
+        return 1;
+    }
+}
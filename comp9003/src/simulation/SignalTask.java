@@ -0,0 +1,58 @@
+package simulation;
+
+import signal.SignalScheduler;
+
+/**
+ * The signals as a MultiRateScheduler task. While some fleet reacts to signals the task
+ * runs exactly when the next transition falls due, so signals keep millisecond accuracy
+ * whatever the vehicles' step and cost one run per transition. When nothing watches them
+ * it never asks to run and each synchronization point works their state out in one pass.
+ */
+public class SignalTask implements MultiRateScheduler.Task {
+
+    private final SignalScheduler signals;
+    private final TickEngine engine;
+    private final boolean watched;
+    private long fired;
+
+    /**
+     * @param watched whether any fleet reacts to the signals between synchronization points.
+     */
+    public SignalTask(SignalScheduler signals, TickEngine engine, boolean watched) {
+        this.signals = signals;
+        this.engine = engine;
+        this.watched = watched;
+    }
+
+    @Override
+    public long run(long now) {
+        fired += engine.advanceSignals(signals, now);
+        return nextDue();
+    }
+
+    @Override
+    public long syncTo(long time) {
+        fired += watched ? engine.advanceSignals(signals, time) : engine.fastForwardSignals(signals, time);
+        return nextDue();
+    }
+
+    /**
+     * Time the next transition falls due, for adding the task to a scheduler.
+     */
+    public long nextDue() {
+        return watched ? signals.nextTransitionTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Transitions fired since the last call.
+     */
+    public long takeFired() {
+        long n = fired;
+        fired = 0;
+        return n;
+    }
+
+    public SignalScheduler getSignals() {
+        return signals;
+    }
+}
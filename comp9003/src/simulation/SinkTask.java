@@ -0,0 +1,52 @@
+package simulation;
+
+import vehicle.FleetManager;
+
+/**
+ * Retires the vehicles of a fleet that have reached a point on the road, at the start
+ * of each of the fleet's steps, as a MultiRateScheduler task.
+ */
+public class SinkTask implements MultiRateScheduler.Task {
+
+    private final FleetManager fleet;
+    private final FleetTask mover;
+    private final double position;
+    private final long period;
+    private long retired;
+
+    public SinkTask(FleetManager fleet, FleetTask mover, double position) {
+        this.fleet = fleet;
+        this.mover = mover;
+        this.position = position;
+        this.period = Math.max(1, Math.round(fleet.getStore().getTimeInterval() * 1000));
+    }
+
+    @Override
+    public long run(long now) {
+        mover.syncTo(now);
+        retired += fleet.retireFrom(position);
+        return now + period;
+    }
+
+    @Override
+    public long syncTo(long time) {
+        long due = nextDue(time);
+        return due == time ? run(time) : due; // what falls due at a synchronization point happens there
+    }
+
+    /**
+     * First check at or after the given time.
+     */
+    public long nextDue(long time) {
+        return (time + period - 1) / period * period;
+    }
+
+    /**
+     * Vehicles retired since the last call.
+     */
+    public long takeRetired() {
+        long n = retired;
+        retired = 0;
+        return n;
+    }
+}
@@ -0,0 +1,71 @@
+package simulation;
+
+import vehicle.FleetManager;
+
+/**
+ * Injects vehicles into a fleet at the start of the road, a few at a time at a fixed
+ * interval, as a MultiRateScheduler task. Each one gets the source's prefix followed by
+ * a serial number as its ID. The fleet is brought up to the moment first, so new
+ * vehicles join a fleet that is where it would be if it had been stepped all along.
+ */
+public class SourceTask implements MultiRateScheduler.Task {
+
+    private final FleetManager fleet;
+    private final FleetTask mover;
+    private final byte type;
+    private final long period;
+    private final int count;
+    private final String prefix;
+    private long serial;
+    private long spawned;
+
+    /**
+     * @param period milliseconds between injections; they happen at multiples of it.
+     * @param serial number the next vehicle's ID ends in.
+     */
+    public SourceTask(FleetManager fleet, FleetTask mover, byte type, long period, int count, String prefix, long serial) {
+        this.fleet = fleet;
+        this.mover = mover;
+        this.type = type;
+        this.period = period;
+        this.count = count;
+        this.prefix = prefix;
+        this.serial = serial;
+    }
+
+    @Override
+    public long run(long now) {
+        mover.syncTo(now);
+        for (int i = 0; i < count; i++) {
+            fleet.spawn(type, prefix + serial++);
+        }
+        spawned += count;
+        return now + period;
+    }
+
+    @Override
+    public long syncTo(long time) {
+        long due = nextDue(time);
+        return due == time ? run(time) : due; // what falls due at a synchronization point happens there
+    }
+
+    /**
+     * First injection at or after the given time.
+     */
+    public long nextDue(long time) {
+        return (time + period - 1) / period * period;
+    }
+
+    public long getSerial() {
+        return serial;
+    }
+
+    /**
+     * Vehicles injected since the last call.
+     */
+    public long takeSpawned() {
+        long n = spawned;
+        spawned = 0;
+        return n;
+    }
+}
@@ -0,0 +1,264 @@
+package simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import exception.InvalidSignalIDException;
+import exception.InvalidTimerException;
+import exception.SimulationException;
+import report.NullReporter;
+
+/**
+ * Runs one scenario many times with different signal timers, several runs at a time.
+ * Every run gets its own forked fleet and its own signal registry, so runs never see
+ * each other's state; the fleet's IDs, velocities and types stay shared between them.
+ * Results are written as each run finishes, and the summary is kept up to date as
+ * they arrive rather than collected at the end.
+ *
+ * The score of a run is the mean vehicle position at its end: the further the fleet
+ * got, the better the timers. With a cutoff, a run whose mean position falls below
+ * cutoff times that of the best finished run at the same result line is stopped there.
+ *
+ * Sweep file format, one directive per line ('#' starts a comment):
+ *   scenario base.txt          scenario to run, relative to the sweep file
+ *   parallel 8                 runs at a time (default: number of processors)
+ *   cutoff 0.9                 stop runs that trail the best by more than 10% (default: off)
+ *   timers A 10,20,30 2 15,25  red, yellow and green values to try for signal A;
+ *                              every combination over all signals is run
+ */
+public class SweepRunner {
+
+    private String scenarioPath;
+    private int parallel = Runtime.getRuntime().availableProcessors();
+    private double cutoff;
+    private final Map<String, int[][]> choices = new LinkedHashMap<>(); // per signal: red, yellow, green values
+
+    /**
+     * Reads the sweep file, runs every combination and writes one CSV line per run to out,
+     * in the order the runs finish, followed by a summary.
+     */
+    public static void run(String sweepFile, PrintStream out) throws IOException, SimulationException {
+        SweepRunner sweep = new SweepRunner();
+        Path file = Path.of(sweepFile);
+        sweep.load(file);
+        Path scenario = file.toAbsolutePath().resolveSibling(sweep.scenarioPath);
+        ScenarioRunner base = ScenarioRunner.open(scenario.toString());
+        for (String id : sweep.choices.keySet()) {
+            if (!base.hasSignal(id)) {
+                throw new SimulationException("Sweep sets timers for unknown signal \"" + id + "\"");
+            }
+        }
+        sweep.sweep(base, out);
+    }
+
+    void sweep(ScenarioRunner base, PrintStream out) throws IOException, SimulationException {
+        List<Map<String, int[]>> configs = combinations();
+        base.setReporter(NullReporter.INSTANCE);
+        AtomicReference<Result> leader = new AtomicReference<>(); // best finished run so far, for the cutoff
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallel, configs.size())));
+        try {
+            CompletionService<Result> results = new ExecutorCompletionService<>(pool);
+            for (int i = 0; i < configs.size(); i++) {
+                final int index = i;
+                results.submit(() -> runOne(base, index, configs.get(index), leader));
+            }
+
+            out.println("run,timers,mean_position,signal_transitions,steps,status");
+            Result best = null;
+            int stopped = 0;
+            double scoreSum = 0;
+            for (int done = 0; done < configs.size(); done++) {
+                Result r = results.take().get();
+                out.println(r.index + "," + label(r.timers) + "," + r.meanPosition + "," + r.transitions + "," + r.steps
+                        + "," + (r.finished ? "done" : "stopped"));
+                if (!r.finished) {
+                    stopped++;
+                    continue;
+                }
+                scoreSum += r.meanPosition;
+                if (best == null || r.meanPosition > best.meanPosition) {
+                    best = r;
+                }
+            }
+            int finished = configs.size() - stopped;
+            out.println("# runs: " + configs.size() + ", finished: " + finished + ", stopped early: " + stopped);
+            if (best != null) {
+                out.println("# best: run " + best.index + " " + label(best.timers) + ", mean position " + best.meanPosition
+                        + ", average over finished runs " + (scoreSum / finished));
+            }
+            out.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimulationException("Sweep interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new SimulationException("Sweep run failed: " + cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Result runOne(ScenarioRunner base, int index, Map<String, int[]> timers, AtomicReference<Result> leader)
+            throws IOException, InvalidSignalIDException, InvalidTimerException {
+        ScenarioRunner scenario = base.variant(timers);
+        Result result = new Result(index, timers);
+        List<Double> curve = new ArrayList<>();
+        result.finished = scenario.simulate(new SequentialTickEngine(), (s, meanPosition, transitions) -> {
+            curve.add(meanPosition);
+            result.meanPosition = meanPosition;
+            result.transitions += transitions;
+            result.steps = s;
+            Result best = leader.get();
+            int line = curve.size() - 1;
+            return cutoff <= 0 || best == null || line >= best.curve.length || meanPosition >= cutoff * best.curve[line];
+        });
+        result.curve = new double[curve.size()];
+        for (int i = 0; i < result.curve.length; i++) {
+            result.curve[i] = curve.get(i);
+        }
+        // published by the run itself, so the cutoff doesn't wait for the aggregating thread
+        while (result.finished) {
+            Result best = leader.get();
+            if ((best != null && best.meanPosition >= result.meanPosition) || leader.compareAndSet(best, result)) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // Every combination of the timer values, signals in the order the sweep file names them
+    private List<Map<String, int[]>> combinations() {
+        List<Map<String, int[]>> configs = new ArrayList<>();
+        configs.add(new LinkedHashMap<>());
+        for (Map.Entry<String, int[][]> entry : choices.entrySet()) {
+            int[][] values = entry.getValue();
+            List<Map<String, int[]>> next = new ArrayList<>();
+            for (Map<String, int[]> config : configs) {
+                for (int r : values[0]) {
+                    for (int y : values[1]) {
+                        for (int g : values[2]) {
+                            Map<String, int[]> extended = new LinkedHashMap<>(config);
+                            extended.put(entry.getKey(), new int[]{r, y, g});
+                            next.add(extended);
+                        }
+                    }
+                }
+            }
+            configs = next;
+        }
+        return configs;
+    }
+
+    private static String label(Map<String, int[]> timers) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, int[]> entry : timers.entrySet()) {
+            int[] t = entry.getValue();
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(entry.getKey()).append('=').append(t[0]).append('/').append(t[1]).append('/').append(t[2]);
+        }
+        return sb.toString();
+    }
+
+    private void load(Path file) throws IOException, SimulationException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                int hash = line.indexOf('#');
+                String[] tokens = (hash >= 0 ? line.substring(0, hash) : line).trim().split("\\s+");
+                if (tokens[0].isEmpty()) {
+                    continue;
+                }
+                try {
+                    apply(tokens);
+                } catch (NumberFormatException e) {
+                    throw new SimulationException("Line " + lineNo + ": invalid number in \"" + line.trim() + "\"");
+                } catch (SimulationException e) {
+                    throw new SimulationException("Line " + lineNo + ": " + e.getMessage());
+                }
+            }
+        }
+        if (scenarioPath == null) {
+            throw new SimulationException("Sweep file has no scenario directive");
+        }
+    }
+
+    private void apply(String[] tokens) throws SimulationException {
+        switch (tokens[0]) {
+            case "scenario":
+                expect(tokens, 2, "scenario <path>");
+                scenarioPath = tokens[1];
+                break;
+            case "parallel":
+                expect(tokens, 2, "parallel <runs>");
+                parallel = Integer.parseInt(tokens[1]);
+                if (parallel <= 0) throw new SimulationException("parallel must be positive");
+                break;
+            case "cutoff":
+                expect(tokens, 2, "cutoff <fraction>");
+                cutoff = Double.parseDouble(tokens[1]);
+                if (cutoff < 0 || cutoff > 1) throw new SimulationException("cutoff must be between 0 and 1");
+                break;
+            case "timers":
+                expect(tokens, 5, "timers <id> <red,...> <yellow,...> <green,...>");
+                int[][] values = new int[3][];
+                for (int c = 0; c < 3; c++) {
+                    values[c] = parseValues(tokens[c + 2]);
+                }
+                choices.put(tokens[1], values);
+                break;
+            default:
+                throw new SimulationException("unknown directive \"" + tokens[0] + "\"");
+        }
+    }
+
+    private static int[] parseValues(String list) throws SimulationException {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i]);
+            if (values[i] <= 0) throw new SimulationException("timer values must be positive");
+        }
+        return values;
+    }
+
+    private static void expect(String[] tokens, int expected, String usage) throws SimulationException {
+        if (tokens.length != expected) {
+            throw new SimulationException("expected \"" + usage + "\"");
+        }
+    }
+
+    private static final class Result {
+        final int index;
+        final Map<String, int[]> timers;
+        double meanPosition;
+        long transitions;
+        long steps;
+        boolean finished;
+        double[] curve;
+
+        Result(int index, Map<String, int[]> timers) {
+            this.index = index;
+            this.timers = timers;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package simulation;
+
+import signal.SignalScheduler;
+import vehicle.VehicleStore;
+
+/**
+ * Advances a simulation by one step.
+ * Implementations decide how the work is spread over threads, but must leave the
+ * fleet and signals in the same state, and print the same output in the same order,
+ * as the sequential engine.
+ */
+public interface TickEngine extends AutoCloseable {
+
+    /**
+     * Moves every vehicle, then advances the signal clock by the same time interval,
+     * firing only the signal transitions that fall due.
+     * @return the number of signal transitions fired.
+     */
+    int step(VehicleStore vehicles, SignalScheduler signals);
+
+    /**
+     * Runs the vehicle phase of one step on its own, for callers that time vehicles and
+     * signals separately (see MultiRateScheduler).
+     */
+    default void moveVehicles(VehicleStore vehicles) {
+        vehicles.advance();
+    }
+
+    /**
+     * Same as calling moveVehicles the given number of times; the default movement is
+     * worked out in one pass, with positions equal to stepping up to floating-point
+     * rounding (see VehicleStore.fastForward).
+     */
+    default void moveVehicles(VehicleStore vehicles, long steps) {
+        if (vehicles.getMotionModel() == null) {
+            vehicles.fastForward(steps);
+            return;
+        }
+        for (long s = 0; s < steps; s++) {
+            moveVehicles(vehicles);
+        }
+    }
+
+    /**
+     * Runs the signal phase on its own: moves the signal clock to the given time (ms).
+     * @return the number of signal transitions fired.
+     */
+    default long advanceSignals(SignalScheduler signals, long time) {
+        return signals.advanceTo(time);
+    }
+
+    /**
+     * Like advanceSignals, but works each signal's state out from its cycle, for callers
+     * that have nothing to do between transitions.
+     * @return the number of signal transitions that fell due.
+     */
+    default long fastForwardSignals(SignalScheduler signals, long time) {
+        return signals.fastForwardTo(time);
+    }
+
+    /**
+     * Same as calling step the given number of times.
+     * Under the default movement vehicles and signals are periodic, so the whole span is
+     * worked out in one pass over each (vehicles through moveVehicles, with positions
+     * equal to stepping up to floating-point rounding); with a motion model the engine
+     * steps one by one.
+     * @return the number of signal transitions fired.
+     */
+    default long fastForward(VehicleStore vehicles, SignalScheduler signals, long steps) {
+        if (vehicles.getMotionModel() != null) {
+            long fired = 0;
+            for (long s = 0; s < steps; s++) {
+                fired += step(vehicles, signals);
+            }
+            return fired;
+        }
+        moveVehicles(vehicles, steps);
+        long stepMillis = Math.round(vehicles.getTimeInterval() * 1000);
+        return signals.fastForwardTo(signals.getTime() + steps * stepMillis);
+    }
+
+    /**
+     * Number of worker threads this engine uses.
+     */
+    int getWorkers();
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Picks the sequential engine for one worker and the fork-join engine otherwise.
+     */
+    static TickEngine create(int workers) {
+        if (workers <= 1) {
+            return new SequentialTickEngine();
+        }
+        return new ForkJoinTickEngine(workers);
+    }
+}
@@ -0,0 +1,86 @@
+package simulation;
+
+import java.util.List;
+import exception.InvalidTimerException;
+import signal.SignalRegistry;
+import signal.TrafficSignal;
+
+/**
+ * Gives signals new timers at set times, as a MultiRateScheduler task. The signals are
+ * brought up to the moment first, so the state a signal is in at the change keeps the
+ * deadline it had and the new durations apply from its next transition on. A signal on
+ * a RoadGraph reprices the graph as its timers change.
+ */
+public class TimerChangeTask implements MultiRateScheduler.Task {
+
+    /**
+     * New red, yellow and green seconds for a signal from a given time on.
+     */
+    public static final class Change {
+        final long time;
+        final String signalID;
+        final int red;
+        final int yellow;
+        final int green;
+
+        /**
+         * @param time milliseconds into the run.
+         */
+        public Change(long time, String signalID, int red, int yellow, int green) {
+            this.time = time;
+            this.signalID = signalID;
+            this.red = red;
+            this.yellow = yellow;
+            this.green = green;
+        }
+    }
+
+    private final SignalTask signals;
+    private final SignalRegistry registry;
+    private final List<Change> changes; // in time order
+    private int next;
+
+    /**
+     * @param changes in time order, for signals in the registry, with positive timers.
+     */
+    public TimerChangeTask(SignalTask signals, SignalRegistry registry, List<Change> changes) {
+        this.signals = signals;
+        this.registry = registry;
+        this.changes = changes;
+    }
+
+    @Override
+    public long run(long now) {
+        signals.syncTo(now);
+        for (; next < changes.size() && changes.get(next).time <= now; next++) {
+            Change change = changes.get(next);
+            TrafficSignal ts = registry.lookup(change.signalID);
+            try {
+                ts.setTimers(change.red, change.yellow, change.green);
+            } catch (InvalidTimerException e) {
+                throw new IllegalStateException(e); // checked when the change was made
+            }
+        }
+        return nextTime();
+    }
+
+    @Override
+    public long syncTo(long time) {
+        long due = nextTime();
+        return due == time ? run(time) : due; // what falls due at a synchronization point happens there
+    }
+
+    /**
+     * First change at or after the given time; earlier ones are taken as made.
+     */
+    public long nextDue(long time) {
+        while (next < changes.size() && changes.get(next).time < time) {
+            next++;
+        }
+        return nextTime();
+    }
+
+    private long nextTime() {
+        return next < changes.size() ? changes.get(next).time : Long.MAX_VALUE;
+    }
+}
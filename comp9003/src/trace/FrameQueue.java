@@ -0,0 +1,54 @@
+package trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer, single-consumer ring of encoded frames.
+ * The producer only writes the tail and the consumer only writes the head, each with a
+ * release store that the other side's read of it acquires, so neither side ever takes
+ * a lock or waits for the other: offer fails straight away when the ring is full.
+ */
+final class FrameQueue {
+
+    private final byte[][] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two.
+     */
+    FrameQueue(int capacity) {
+        int n = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new byte[n][];
+        mask = n - 1;
+    }
+
+    // Producer side only
+    boolean offer(byte[] frame) {
+        long t = tail.get();
+        if (t - head.get() == slots.length) {
+            return false;
+        }
+        slots[(int) t & mask] = frame;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // Consumer side only; null when empty
+    byte[] poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int i = (int) h & mask;
+        byte[] frame = slots[i];
+        slots[i] = null;
+        head.lazySet(h + 1);
+        return frame;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+}
@@ -0,0 +1,143 @@
+package trace;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte array that trace records are encoded into.
+ * Integers are written as LEB128 varints, seven bits a byte with the high bit set on all
+ * but the last, so the small numbers that make up most deltas take one or two bytes.
+ * Signed values are zigzag-mapped first (0, -1, 1, -2, ... to 0, 1, 2, 3, ...).
+ */
+final class TraceBuffer {
+
+    private byte[] data;
+    private int size;
+
+    TraceBuffer(int initialCapacity) {
+        data = new byte[Math.max(16, initialCapacity)];
+    }
+
+    void putByte(int value) {
+        ensure(1);
+        data[size++] = (byte) value;
+    }
+
+    void putVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    void putSignedVarLong(long value) {
+        putVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, data, size, bytes.length);
+        size += bytes.length;
+    }
+
+    void putBuffer(TraceBuffer other) {
+        ensure(other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(size + extra, data.length * 2));
+        }
+    }
+
+    /**
+     * Reads a varint from a stream.
+     * @throws EOFException if the stream ends before the varint does.
+     */
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Trace ends inside a number");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt trace: number longer than 64 bits");
+    }
+
+    /**
+     * Decodes a frame payload from the front.
+     */
+    static final class Cursor {
+        private final byte[] data;
+        private int position;
+
+        Cursor(byte[] data) {
+            this.data = data;
+        }
+
+        int getByte() throws IOException {
+            if (position >= data.length) {
+                throw new IOException("Corrupt trace: frame ends early");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        long getVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = getByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt trace: number longer than 64 bits");
+        }
+
+        long getSignedVarLong() throws IOException {
+            long v = getVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        int getCount() throws IOException {
+            long n = getVarLong();
+            if (n < 0 || n > data.length - position) { // every counted item takes at least a byte
+                throw new IOException("Corrupt trace: count " + n + " in a frame of " + data.length + " bytes");
+            }
+            return (int) n;
+        }
+
+        String getString() throws IOException {
+            int length = getCount();
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package trace;
+
+/**
+ * Layout of a trace file.
+ *
+ *   header   "STRC", version byte
+ *   frame    kind byte (KEYFRAME or DELTA), varint step, varint payload length, payload
+ *   ...
+ *   index    END byte, varint keyframe count, then per keyframe its step and file offset,
+ *            each as a varint delta from the previous one
+ *   trailer  8-byte big-endian offset of the index, "TIDX"
+ *
+ * A payload has five sections, each a varint count followed by its records:
+ *   removed  vehicle number, as a zigzag delta from the previous one
+ *   added    vehicle number, fleet, type byte, ID, then zigzag lane, position and velocity
+ *   moved    varint (zigzag number delta &lt;&lt; 2 | velocity changed &lt;&lt; 1 | lane changed),
+ *            zigzag position delta, then the new lane and the velocity delta if they changed
+ *   signals  varint (signal number &lt;&lt; 1 | named), the ID if named, state byte, timer
+ *   events   kind byte, name reference (0 for a new name, given inline, else its number
+ *            plus one), intersection index, and for JUMP the end index and missing count
+ * A keyframe lists every vehicle as added and names every signal, so replay can start
+ * from it; a delta only lists what changed since the frame before. Vehicle numbers
+ * freed by removed vehicles are reused. Intersection tracker names are numbered afresh
+ * from each keyframe. Positions and velocities are stored in units of 1/SCALE.
+ */
+final class TraceFormat {
+
+    static final byte[] MAGIC = {'S', 'T', 'R', 'C'};
+    static final byte[] INDEX_MAGIC = {'T', 'I', 'D', 'X'};
+    static final int VERSION = 1;
+
+    static final int END = 0;
+    static final int KEYFRAME = 1;
+    static final int DELTA = 2;
+
+    static final double SCALE = 1000;
+
+    // Signal states; NONE for a signal that has not started
+    static final String[] STATES = {"red", "yellow", "green", "none"};
+
+    // Event kinds: the MoveOutcome ordinals, then a jump over a range of intersections
+    static final int JUMP = 4;
+
+    private TraceFormat() {
+    }
+
+    static long quantize(double value) {
+        return Math.round(value * SCALE);
+    }
+}
@@ -0,0 +1,221 @@
+package trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Replays a trace written by TraceRecorder.
+ * stateAt() finds the last keyframe at or before the step asked for in the index at the
+ * end of the file, and decodes from there, so it reads at most one keyframe interval
+ * whatever the length of the run. A trace cut short, e.g. by a crash, has no index; it
+ * is then scanned once for its keyframes, and replay stops at the last complete frame.
+ */
+public class TraceReader implements AutoCloseable {
+
+    private static final int READ_BUFFER = 1 << 16;
+    private static final int HEADER = TraceFormat.MAGIC.length + 1;
+
+    private final FileChannel channel;
+    private long[] keySteps;
+    private long[] keyOffsets;
+    private boolean indexed;
+
+    public TraceReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, HEADER);
+            for (int i = 0; i < TraceFormat.MAGIC.length; i++) {
+                if (header.get(i) != TraceFormat.MAGIC[i]) {
+                    throw new IOException(file + " is not a trace");
+                }
+            }
+            if (header.get(TraceFormat.MAGIC.length) != TraceFormat.VERSION) {
+                throw new IOException("Unsupported trace version " + header.get(TraceFormat.MAGIC.length));
+            }
+            if (!readIndex()) {
+                scan();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The state as of the last frame at or before the given step.
+     * @throws IllegalArgumentException if the trace starts after that step.
+     */
+    public TraceState stateAt(long step) throws IOException {
+        int k = Arrays.binarySearch(keySteps, step);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("Trace has no frame at or before step " + step);
+        }
+        TraceState state = new TraceState();
+        DataInputStream in = openAt(keyOffsets[k]);
+        while (true) {
+            int kind;
+            long frameStep;
+            byte[] payload;
+            try {
+                kind = in.read();
+                if (kind < 0 || kind == TraceFormat.END) {
+                    break;
+                }
+                frameStep = TraceBuffer.readVarLong(in);
+                if (frameStep > step) {
+                    break;
+                }
+                payload = new byte[checkLength(TraceBuffer.readVarLong(in))];
+                in.readFully(payload);
+            } catch (EOFException e) {
+                if (indexed) {
+                    throw e;
+                }
+                break; // the last frame of an unfinished trace
+            }
+            if (kind != TraceFormat.KEYFRAME && kind != TraceFormat.DELTA) {
+                throw new IOException("Corrupt trace: frame kind " + kind);
+            }
+            state.apply(kind, frameStep, payload);
+        }
+        return state;
+    }
+
+    /**
+     * Step of the first keyframe, or -1 if the trace has none.
+     */
+    public long getFirstStep() {
+        return keySteps.length == 0 ? -1 : keySteps[0];
+    }
+
+    public int getKeyframeCount() {
+        return keySteps.length;
+    }
+
+    /**
+     * False if the trace was not closed properly and its keyframes had to be found by scanning.
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean readIndex() throws IOException {
+        long size = channel.size();
+        if (size < HEADER + 1 + 12) {
+            return false;
+        }
+        ByteBuffer trailer = read(size - 12, 12);
+        for (int i = 0; i < TraceFormat.INDEX_MAGIC.length; i++) {
+            if (trailer.get(8 + i) != TraceFormat.INDEX_MAGIC[i]) {
+                return false;
+            }
+        }
+        long indexOffset = trailer.getLong(0);
+        if (indexOffset < HEADER || indexOffset >= size - 12) {
+            throw new IOException("Corrupt trace: index at " + indexOffset);
+        }
+        DataInputStream in = openAt(indexOffset);
+        if (in.read() != TraceFormat.END) {
+            throw new IOException("Corrupt trace: no index at " + indexOffset);
+        }
+        int count = checkLength(TraceBuffer.readVarLong(in));
+        keySteps = new long[count];
+        keyOffsets = new long[count];
+        long step = 0;
+        long at = 0;
+        for (int i = 0; i < count; i++) {
+            step += TraceBuffer.readVarLong(in);
+            at += TraceBuffer.readVarLong(in);
+            keySteps[i] = step;
+            keyOffsets[i] = at;
+        }
+        indexed = true;
+        return true;
+    }
+
+    // Walks the frames of a trace without an index, noting its keyframes
+    private void scan() throws IOException {
+        keySteps = new long[16];
+        keyOffsets = new long[16];
+        int count = 0;
+        long at = HEADER;
+        long size = channel.size();
+        DataInputStream in = openAt(at);
+        try {
+            while (at < size) {
+                int kind = in.read();
+                if (kind < 0 || kind == TraceFormat.END) {
+                    break;
+                }
+                long step = TraceBuffer.readVarLong(in);
+                long length = TraceBuffer.readVarLong(in);
+                long start = at;
+                at = start + 1 + varLength(step) + varLength(length) + length;
+                if (at > size) {
+                    break; // cut off part way through
+                }
+                if (kind == TraceFormat.KEYFRAME) {
+                    if (count == keySteps.length) {
+                        keySteps = Arrays.copyOf(keySteps, count * 2);
+                        keyOffsets = Arrays.copyOf(keyOffsets, count * 2);
+                    }
+                    keySteps[count] = step;
+                    keyOffsets[count] = start;
+                    count++;
+                }
+                in.skipNBytes(length);
+            }
+        } catch (EOFException e) {
+            // the last frame was not written completely
+        }
+        keySteps = Arrays.copyOf(keySteps, count);
+        keyOffsets = Arrays.copyOf(keyOffsets, count);
+    }
+
+    // Left open: closing a stream over the channel would close the channel
+    private DataInputStream openAt(long offset) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(offset)), READ_BUFFER));
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Trace is too short");
+            }
+        }
+        return buffer;
+    }
+
+    private static int checkLength(long length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Corrupt trace: length " + length);
+        }
+        return (int) length;
+    }
+
+    private static int varLength(long value) {
+        int n = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,386 @@
+package trace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import network.MoveOutcome;
+import signal.TrafficSignal;
+import vehicle.VehicleStore;
+
+/**
+ * Records a run as a compact binary trace that TraceReader can replay at any step.
+ *
+ * Each call to frame() compares the fleets and signals with the previous frame and
+ * encodes only what changed: vehicles added and removed, position deltas, lane and
+ * velocity changes and signal transitions, plus the intersection outcomes reported since.
+ * Every keyframeEvery frames the full state is written instead, as a keyframe replay can
+ * start from (see TraceFormat). Encoding happens on the calling thread; the finished frame
+ * goes onto a bounded lock-free queue and a writer thread of its own does the I/O. If the
+ * writer falls behind and the queue is full, the frame is dropped, counted, and the next
+ * frame is made a keyframe, so the simulation never waits for the disk and the trace
+ * stays consistent from then on.
+ *
+ * Not thread-safe: frame() and the intersection methods must be called from the thread
+ * that drives the simulation, like the reporters.
+ */
+public class TraceRecorder implements AutoCloseable {
+
+    public static final int DEFAULT_KEYFRAME_EVERY = 100;
+    public static final int DEFAULT_QUEUE = 64;
+
+    private final int keyframeEvery;
+    private final FrameQueue queue;
+    private final TraceWriter writer;
+    private final Thread writerThread;
+    private boolean closed;
+    private long droppedFrames;
+    private long lastStep = -1;
+    private boolean nextIsKeyframe = true;
+    private int framesSinceKeyframe;
+    private int frameNo;
+
+    // Per vehicle number: its last recorded state, and the frame it was last seen in
+    private String[] idOf = new String[1024];
+    private int[] fleetOf = new int[1024];
+    private int[] laneOf = new int[1024];
+    private long[] positionOf = new long[1024];
+    private long[] velocityOf = new long[1024];
+    private int[] seenIn = new int[1024];
+    private int numbers; // numbers ever handed out
+    private int[] free = new int[16]; // numbers of removed vehicles, reused first
+    private int freeCount;
+    private int[] live = new int[1024]; // numbers in the previous frame
+    private int liveCount;
+    private int[] nextLive = new int[1024];
+    private final List<FleetCache> caches = new ArrayList<>();
+
+    private final Map<TrafficSignal, int[]> signals = new IdentityHashMap<>(); // number, state, timer
+    private final Map<String, Integer> names = new HashMap<>(); // tracker names since the last keyframe
+
+    private final TraceBuffer removed = new TraceBuffer(1024);
+    private final TraceBuffer added = new TraceBuffer(1 << 16);
+    private final TraceBuffer moved = new TraceBuffer(1 << 16);
+    private final TraceBuffer signalBuffer = new TraceBuffer(256);
+    private final TraceBuffer events = new TraceBuffer(1024);
+    private int eventCount;
+    private final TraceBuffer payload = new TraceBuffer(1 << 16);
+    private final TraceBuffer frame = new TraceBuffer(1 << 16);
+
+    public TraceRecorder(Path file) throws IOException {
+        this(file, DEFAULT_KEYFRAME_EVERY, DEFAULT_QUEUE);
+    }
+
+    /**
+     * @param keyframeEvery frames from one keyframe to the next; replay decodes up to this many.
+     * @param queueCapacity frames the writer may fall behind by before frames are dropped.
+     */
+    public TraceRecorder(Path file, int keyframeEvery, int queueCapacity) throws IOException {
+        if (keyframeEvery <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Keyframe interval and queue capacity must be positive. Received: "
+                    + keyframeEvery + ", " + queueCapacity);
+        }
+        this.keyframeEvery = keyframeEvery;
+        this.queue = new FrameQueue(queueCapacity);
+        this.writer = new TraceWriter(file, queue);
+        this.writerThread = new Thread(writer, "trace-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Records the state at the given step. Steps must increase from frame to frame.
+     * @throws IOException if the writer thread has failed.
+     */
+    public void frame(long step, List<VehicleStore> fleets, Iterable<TrafficSignal> signalList) throws IOException {
+        checkWriter();
+        if (closed) {
+            throw new IllegalStateException("Trace recorder is closed");
+        }
+        if (step <= lastStep) {
+            throw new IllegalArgumentException("Trace steps must increase: " + step + " after " + lastStep);
+        }
+        lastStep = step;
+        boolean keyframe = nextIsKeyframe;
+        frameNo++;
+        int addedCount = 0;
+        int movedCount = 0;
+        int previous = 0;
+        added.clear();
+        moved.clear();
+        int nextCount = 0;
+        for (int f = 0; f < fleets.size(); f++) {
+            VehicleStore store = fleets.get(f);
+            if (f == caches.size()) {
+                caches.add(new FleetCache());
+            }
+            FleetCache cache = caches.get(f);
+            int n = store.size();
+            cache.resize(n);
+            for (int slot = 0; slot < n; slot++) {
+                String id = store.getVehicleID(slot);
+                int number;
+                boolean isNew = false;
+                if (cache.ids[slot] == id && seenIn[cache.numbers[slot]] != frameNo) {
+                    number = cache.numbers[slot]; // same vehicle in the same slot as last frame
+                } else {
+                    Integer known = cache.byId.get(id);
+                    if (known == null || seenIn[known] == frameNo) {
+                        // a vehicle not seen before, or a second one with an ID already seen in this frame
+                        number = newNumber();
+                        if (known == null) {
+                            cache.byId.put(id, number);
+                        }
+                        idOf[number] = id;
+                        fleetOf[number] = f;
+                        isNew = true;
+                    } else {
+                        number = known;
+                    }
+                    cache.ids[slot] = id;
+                    cache.numbers[slot] = number;
+                }
+                seenIn[number] = frameNo;
+                int lane = store.getCurrentLane(slot);
+                long position = TraceFormat.quantize(store.getCurrentPosition(slot));
+                long velocity = TraceFormat.quantize(store.getVelocity(slot));
+                if (isNew || keyframe) {
+                    added.putVarLong(number);
+                    added.putVarLong(f);
+                    added.putByte(store.getTypeCode(slot));
+                    added.putString(id);
+                    added.putSignedVarLong(lane);
+                    added.putSignedVarLong(position);
+                    added.putSignedVarLong(velocity);
+                    addedCount++;
+                } else {
+                    boolean laneChanged = lane != laneOf[number];
+                    boolean velocityChanged = velocity != velocityOf[number];
+                    if (laneChanged || velocityChanged || position != positionOf[number]) {
+                        long delta = number - (long) previous;
+                        long zigzag = (delta << 1) ^ (delta >> 63);
+                        moved.putVarLong(zigzag << 2 | (velocityChanged ? 2 : 0) | (laneChanged ? 1 : 0));
+                        moved.putSignedVarLong(position - positionOf[number]);
+                        if (laneChanged) {
+                            moved.putSignedVarLong(lane);
+                        }
+                        if (velocityChanged) {
+                            moved.putSignedVarLong(velocity - velocityOf[number]);
+                        }
+                        previous = number;
+                        movedCount++;
+                    }
+                }
+                laneOf[number] = lane;
+                positionOf[number] = position;
+                velocityOf[number] = velocity;
+                if (nextCount == nextLive.length) {
+                    nextLive = Arrays.copyOf(nextLive, nextCount * 2);
+                }
+                nextLive[nextCount++] = number;
+            }
+        }
+
+        // vehicles of the previous frame that were not seen in this one have left
+        removed.clear();
+        int removedCount = 0;
+        int previousRemoved = 0;
+        for (int i = 0; i < liveCount; i++) {
+            int number = live[i];
+            if (seenIn[number] != frameNo) {
+                if (!keyframe) {
+                    removed.putSignedVarLong(number - previousRemoved);
+                    previousRemoved = number;
+                    removedCount++;
+                }
+                caches.get(fleetOf[number]).byId.remove(idOf[number], number);
+                idOf[number] = null;
+                if (freeCount == free.length) {
+                    free = Arrays.copyOf(free, freeCount * 2);
+                }
+                free[freeCount++] = number;
+            }
+        }
+        int[] swap = live;
+        live = nextLive;
+        nextLive = swap;
+        liveCount = nextCount;
+
+        signalBuffer.clear();
+        int signalCount = 0;
+        for (TrafficSignal ts : signalList) {
+            int[] last = signals.get(ts);
+            boolean named = keyframe || last == null;
+            if (last == null) {
+                last = new int[] {signals.size(), -1, -1};
+                signals.put(ts, last);
+            }
+            int state = stateCode(ts);
+            int timer = ts.getCurrentTimer();
+            if (named || state != last[1] || timer != last[2]) {
+                signalBuffer.putVarLong((long) last[0] << 1 | (named ? 1 : 0));
+                if (named) {
+                    signalBuffer.putString(ts.getSignalID());
+                }
+                signalBuffer.putByte(state);
+                signalBuffer.putVarLong(timer);
+                last[1] = state;
+                last[2] = timer;
+                signalCount++;
+            }
+        }
+
+        payload.clear();
+        payload.putVarLong(removedCount);
+        payload.putBuffer(removed);
+        payload.putVarLong(addedCount);
+        payload.putBuffer(added);
+        payload.putVarLong(movedCount);
+        payload.putBuffer(moved);
+        payload.putVarLong(signalCount);
+        payload.putBuffer(signalBuffer);
+        payload.putVarLong(eventCount);
+        payload.putBuffer(events);
+        events.clear();
+        eventCount = 0;
+
+        frame.clear();
+        frame.putByte(keyframe ? TraceFormat.KEYFRAME : TraceFormat.DELTA);
+        frame.putVarLong(step);
+        frame.putVarLong(payload.size());
+        frame.putBuffer(payload);
+        boolean sent = queue.offer(frame.toByteArray());
+        LockSupport.unpark(writerThread);
+
+        if (!sent) {
+            droppedFrames++;
+        }
+        if (keyframe) {
+            framesSinceKeyframe = 0;
+        }
+        framesSinceKeyframe++;
+        nextIsKeyframe = !sent || framesSinceKeyframe >= keyframeEvery;
+        if (nextIsKeyframe) {
+            names.clear();
+        }
+    }
+
+    /**
+     * Records the outcome of an IntersectionNetwork tracker's move through one
+     * intersection, to go into the next frame.
+     */
+    public void intersection(String trackerId, int index, MoveOutcome outcome) {
+        events.putByte(outcome.ordinal());
+        putName(trackerId);
+        events.putVarLong(index);
+        eventCount++;
+    }
+
+    /**
+     * Records an IntersectionNetwork tracker's jump over intersections from up to to,
+     * in which it tried to use missing non-existent ones.
+     */
+    public void intersectionJump(String trackerId, int from, int to, int missing) {
+        events.putByte(TraceFormat.JUMP);
+        putName(trackerId);
+        events.putVarLong(from);
+        events.putVarLong(to);
+        events.putVarLong(missing);
+        eventCount++;
+    }
+
+    /**
+     * Frames dropped because the writer had fallen too far behind.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Waits for the writer to write every queued frame and the keyframe index.
+     * @throws IOException if the writer failed at any point.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            writer.close();
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while finishing the trace", e);
+            }
+        }
+        checkWriter();
+    }
+
+    private void putName(String name) {
+        Integer known = names.get(name);
+        if (known == null) {
+            events.putVarLong(0);
+            events.putString(name);
+            names.put(name, names.size());
+        } else {
+            events.putVarLong(known + 1L);
+        }
+    }
+
+    private int newNumber() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (numbers == idOf.length) {
+            int n = numbers * 2;
+            idOf = Arrays.copyOf(idOf, n);
+            fleetOf = Arrays.copyOf(fleetOf, n);
+            laneOf = Arrays.copyOf(laneOf, n);
+            positionOf = Arrays.copyOf(positionOf, n);
+            velocityOf = Arrays.copyOf(velocityOf, n);
+            seenIn = Arrays.copyOf(seenIn, n);
+        }
+        return numbers++;
+    }
+
+    private void checkWriter() throws IOException {
+        IOException e = writer.getError();
+        if (e != null) {
+            throw new IOException("Trace writer failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static int stateCode(TrafficSignal ts) {
+        String state = ts.getCurrentState();
+        for (int i = 0; i < TraceFormat.STATES.length; i++) {
+            if (TraceFormat.STATES[i].equals(state)) {
+                return i;
+            }
+        }
+        return TraceFormat.STATES.length - 1;
+    }
+
+    // Which vehicle sat in each slot of a fleet at the last frame, and the fleet's IDs
+    private static final class FleetCache {
+        String[] ids = new String[0];
+        int[] numbers = new int[0];
+        int count;
+        final Map<String, Integer> byId = new HashMap<>();
+
+        void resize(int n) {
+            if (n > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(n, ids.length * 2));
+                numbers = Arrays.copyOf(numbers, ids.length);
+            }
+            if (n < count) {
+                Arrays.fill(ids, n, count, null);
+            }
+            count = n;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package trace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import network.MoveOutcome;
+import report.SimulationReporter;
+
+/**
+ * The full state of a traced run at one frame, as rebuilt by TraceReader: every vehicle
+ * and signal, and the intersection events recorded in that frame. Vehicles are listed
+ * in the order of the numbers the trace gave them.
+ */
+public class TraceState {
+
+    private long step = -1;
+
+    // Per vehicle number
+    private String[] ids = new String[64];
+    private int[] fleets = new int[64];
+    private byte[] types = new byte[64];
+    private int[] lanes = new int[64];
+    private long[] positions = new long[64];
+    private long[] velocities = new long[64];
+    private int[] order; // live vehicle numbers, ascending; rebuilt after each frame
+
+    // Per signal number
+    private final List<String> signalIds = new ArrayList<>();
+    private final List<int[]> signalStates = new ArrayList<>(); // state, timer
+
+    private final List<String> names = new ArrayList<>(); // tracker names since the last keyframe
+    private final List<String> events = new ArrayList<>();
+
+    TraceState() {
+    }
+
+    // Applies one frame's payload
+    void apply(int kind, long frameStep, byte[] payload) throws IOException {
+        TraceBuffer.Cursor in = new TraceBuffer.Cursor(payload);
+        if (kind == TraceFormat.KEYFRAME) {
+            Arrays.fill(ids, null);
+            names.clear();
+        }
+        step = frameStep;
+        order = null;
+        events.clear();
+
+        long number = 0;
+        for (int n = in.getCount(); n > 0; n--) {
+            number += in.getSignedVarLong();
+            ids[checkNumber(number)] = null;
+        }
+        for (int n = in.getCount(); n > 0; n--) {
+            int v = (int) in.getVarLong();
+            ensure(v);
+            fleets[v] = (int) in.getVarLong();
+            types[v] = (byte) in.getByte();
+            ids[v] = in.getString();
+            lanes[v] = (int) in.getSignedVarLong();
+            positions[v] = in.getSignedVarLong();
+            velocities[v] = in.getSignedVarLong();
+        }
+        number = 0;
+        for (int n = in.getCount(); n > 0; n--) {
+            long header = in.getVarLong();
+            long zigzag = header >>> 2;
+            number += (zigzag >>> 1) ^ -(zigzag & 1);
+            int v = checkNumber(number);
+            positions[v] += in.getSignedVarLong();
+            if ((header & 1) != 0) {
+                lanes[v] = (int) in.getSignedVarLong();
+            }
+            if ((header & 2) != 0) {
+                velocities[v] += in.getSignedVarLong();
+            }
+        }
+        for (int n = in.getCount(); n > 0; n--) {
+            long header = in.getVarLong();
+            int s = (int) (header >>> 1);
+            if ((header & 1) != 0) {
+                String id = in.getString();
+                while (signalIds.size() <= s) {
+                    signalIds.add(null);
+                    signalStates.add(new int[2]);
+                }
+                signalIds.set(s, id);
+            } else if (s >= signalIds.size() || signalIds.get(s) == null) {
+                throw new IOException("Corrupt trace: unknown signal " + s);
+            }
+            int state = in.getByte();
+            if (state >= TraceFormat.STATES.length) {
+                throw new IOException("Corrupt trace: signal state " + state);
+            }
+            signalStates.get(s)[0] = state;
+            signalStates.get(s)[1] = (int) in.getVarLong();
+        }
+        for (int n = in.getCount(); n > 0; n--) {
+            int eventKind = in.getByte();
+            long ref = in.getVarLong();
+            String name;
+            if (ref == 0) {
+                name = in.getString();
+                names.add(name);
+            } else if (ref <= names.size()) {
+                name = names.get((int) ref - 1);
+            } else {
+                throw new IOException("Corrupt trace: unknown tracker " + ref);
+            }
+            long index = in.getVarLong();
+            if (eventKind == TraceFormat.JUMP) {
+                long to = in.getVarLong();
+                long missing = in.getVarLong();
+                events.add(name + ": intersections " + index + " to " + (to - 1) + ", " + missing + " missing");
+            } else if (eventKind < MoveOutcome.values().length) {
+                events.add(name + ": intersection " + index + " " + MoveOutcome.values()[eventKind]);
+            } else {
+                throw new IOException("Corrupt trace: event kind " + eventKind);
+            }
+        }
+    }
+
+    /**
+     * Step of the frame this state is from.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    public int size() {
+        return order().length;
+    }
+
+    public String getVehicleID(int i) {
+        return ids[order()[i]];
+    }
+
+    public int getFleet(int i) {
+        return fleets[order()[i]];
+    }
+
+    public byte getTypeCode(int i) {
+        return types[order()[i]];
+    }
+
+    public int getLane(int i) {
+        return lanes[order()[i]];
+    }
+
+    public double getPosition(int i) {
+        return positions[order()[i]] / TraceFormat.SCALE;
+    }
+
+    public double getVelocity(int i) {
+        return velocities[order()[i]] / TraceFormat.SCALE;
+    }
+
+    public int signalCount() {
+        return signalIds.size();
+    }
+
+    public String getSignalID(int i) {
+        return signalIds.get(i);
+    }
+
+    public String getSignalState(int i) {
+        return TraceFormat.STATES[signalStates.get(i)[0]];
+    }
+
+    public int getSignalTimer(int i) {
+        return signalStates.get(i)[1];
+    }
+
+    /**
+     * Intersection events recorded in this frame, one line each.
+     */
+    public List<String> getEvents() {
+        return events;
+    }
+
+    /**
+     * Sends the whole state to a reporter, vehicles then signals then events.
+     */
+    public void report(SimulationReporter reporter) {
+        reporter.message("=== Trace state at step " + step + " ===");
+        for (int i = 0; i < size(); i++) {
+            reporter.vehicleState(getVehicleID(i), getLane(i), getPosition(i), getVelocity(i));
+        }
+        for (int i = 0; i < signalCount(); i++) {
+            if (signalIds.get(i) != null) {
+                reporter.signalState(getSignalID(i), getSignalState(i), getSignalTimer(i));
+            }
+        }
+        for (String event : events) {
+            reporter.message(event);
+        }
+        reporter.flush();
+    }
+
+    private int[] order() {
+        if (order == null) {
+            int n = 0;
+            for (String id : ids) {
+                if (id != null) {
+                    n++;
+                }
+            }
+            order = new int[n];
+            n = 0;
+            for (int v = 0; v < ids.length; v++) {
+                if (ids[v] != null) {
+                    order[n++] = v;
+                }
+            }
+        }
+        return order;
+    }
+
+    private int checkNumber(long number) throws IOException {
+        if (number < 0 || number >= ids.length || ids[(int) number] == null) {
+            throw new IOException("Corrupt trace: unknown vehicle " + number);
+        }
+        return (int) number;
+    }
+
+    private void ensure(int number) throws IOException {
+        if (number < 0) {
+            throw new IOException("Corrupt trace: vehicle number " + number);
+        }
+        if (number >= ids.length) {
+            int n = Math.max(number + 1, ids.length * 2);
+            ids = Arrays.copyOf(ids, n);
+            fleets = Arrays.copyOf(fleets, n);
+            types = Arrays.copyOf(types, n);
+            lanes = Arrays.copyOf(lanes, n);
+            positions = Arrays.copyOf(positions, n);
+            velocities = Arrays.copyOf(velocities, n);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package trace;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The thread that takes encoded frames off the queue and writes them to the file,
+ * noting where each keyframe starts, and writes the keyframe index once the recorder
+ * is closed. Parks while the queue is empty; the recorder unparks it after each frame.
+ */
+final class TraceWriter implements Runnable {
+
+    private static final int BUFFER = 1 << 20;
+
+    private final Path file;
+    private final FrameQueue queue;
+    private volatile boolean closing;
+    private volatile IOException error;
+    private long offset;
+    private long[] keySteps = new long[64];
+    private long[] keyOffsets = new long[64];
+    private int keyCount;
+
+    TraceWriter(Path file, FrameQueue queue) {
+        this.file = file;
+        this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER)) {
+            write(out, TraceFormat.MAGIC);
+            write(out, new byte[] {TraceFormat.VERSION});
+            while (true) {
+                byte[] frame = queue.poll();
+                if (frame == null) {
+                    if (closing && queue.isEmpty()) {
+                        break;
+                    }
+                    out.flush(); // the file keeps up with the run while it is quiet
+                    LockSupport.park(this);
+                    continue;
+                }
+                if (frame[0] == TraceFormat.KEYFRAME) {
+                    addKeyframe(stepOf(frame), offset);
+                }
+                write(out, frame);
+            }
+            writeIndex(out);
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException | Error e) {
+            error = new IOException("Trace writer failed", e);
+        } finally {
+            // frames offered after a failure are dropped rather than piling up
+            byte[] dropped;
+            do {
+                dropped = queue.poll();
+            } while (dropped != null);
+        }
+    }
+
+    void close() {
+        closing = true;
+    }
+
+    IOException getError() {
+        return error;
+    }
+
+    private void writeIndex(OutputStream out) throws IOException {
+        long indexOffset = offset;
+        TraceBuffer index = new TraceBuffer(16 + keyCount * 4);
+        index.putByte(TraceFormat.END);
+        index.putVarLong(keyCount);
+        long step = 0;
+        long at = 0;
+        for (int i = 0; i < keyCount; i++) {
+            index.putVarLong(keySteps[i] - step);
+            index.putVarLong(keyOffsets[i] - at);
+            step = keySteps[i];
+            at = keyOffsets[i];
+        }
+        write(out, index.toByteArray());
+        byte[] trailer = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            trailer[i] = (byte) (indexOffset >>> (56 - 8 * i));
+        }
+        write(out, trailer);
+        write(out, TraceFormat.INDEX_MAGIC);
+    }
+
+    private void addKeyframe(long step, long at) {
+        if (keyCount == keySteps.length) {
+            keySteps = Arrays.copyOf(keySteps, keyCount * 2);
+            keyOffsets = Arrays.copyOf(keyOffsets, keyCount * 2);
+        }
+        keySteps[keyCount] = step;
+        keyOffsets[keyCount] = at;
+        keyCount++;
+    }
+
+    private void write(OutputStream out, byte[] bytes) throws IOException {
+        out.write(bytes);
+        offset += bytes.length;
+    }
+
+    // The varint after the kind byte
+    private static long stepOf(byte[] frame) {
+        long value = 0;
+        for (int i = 1, shift = 0; ; i++, shift += 7) {
+            value |= (long) (frame[i] & 0x7F) << shift;
+            if ((frame[i] & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
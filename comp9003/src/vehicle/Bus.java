@@ -1,12 +1,27 @@
 package vehicle;
 
 public class Bus extends Vehicle {
+    static final double SPEED = 80.0;
+
     public Bus(String vehicleID) {
         super(vehicleID);
     }
 
+    public Bus(VehicleStore store, String vehicleID) {
+        super(store, vehicleID);
+    }
+
+    Bus(VehicleStore store, int slot) {
+        super(store, slot);
+    }
+
     @Override
     protected double getSpeed() {
-        return 80.0;
+        return SPEED;
+    }
+
+    @Override
+    protected byte getTypeCode() {
+        return VehicleStore.TYPE_BUS;
     }
 }
\ No newline at end of file
@@ -1,12 +1,27 @@
 package vehicle;
 
 public class Car extends Vehicle {
+    static final double SPEED = 100.0;
+
     public Car(String vehicleID) {
         super(vehicleID);
     }
 
+    public Car(VehicleStore store, String vehicleID) {
+        super(store, vehicleID);
+    }
+
+    Car(VehicleStore store, int slot) {
+        super(store, slot);
+    }
+
     @Override
     protected double getSpeed() {
-        return 100.0;
+        return SPEED;
+    }
+
+    @Override
+    protected byte getTypeCode() {
+        return VehicleStore.TYPE_CAR;
     }
 }
\ No newline at end of file
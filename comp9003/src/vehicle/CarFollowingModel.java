@@ -0,0 +1,198 @@
+package vehicle;
+
+import java.util.Arrays;
+import signal.SignalPlan;
+import signal.TrafficSignal;
+
+/**
+ * Car-following movement with lane changes, driven by a LaneIndex.
+ * Each step first lets held-up vehicles change lane: a vehicle that cannot cover its
+ * normal distance behind its leader moves to a neighbouring lane if the road ahead
+ * there is longer and the vehicle that would end up behind it has room to slow down.
+ * Moves towards lane 1 are decided and applied before moves away from it, so a lane
+ * only ever takes vehicles from one side at a time. Then each lane moves front to back:
+ * a vehicle covers its normal distance unless that would take it closer than MIN_GAP
+ * to its leader, and never moves backwards.
+ * Every query goes through the index, so a step costs O(n log n) at worst however
+ * crowded the road is.
+ *
+ * With a SignalPlan the stop lines count too: a vehicle never crosses a line whose
+ * signal is red, nor one whose signal is yellow unless it is already within MIN_GAP of
+ * it, so it slows to stop at the line instead. Each vehicle keeps the index of the next
+ * line ahead of it, which only moves forward, so only a vehicle whose move would reach
+ * that line looks at a signal at all. A vehicle that is held up holds up everything
+ * packed in behind it as well; such a queue is passed over in one tight loop that only
+ * counts the moves.
+ */
+public class CarFollowingModel implements MotionModel {
+
+    // Distance kept to the vehicle in front, in the same units as positions
+    public static final double MIN_GAP = 7.5;
+
+    private final SignalPlan signals;
+    private LaneIndex index;
+    private int[] nextLine = new int[0]; // per slot: the first stop line at or ahead of it
+    private int linesForStore = -1; // store modCount nextLine was computed for
+    private int linesForPlan = -1; // plan modCount nextLine was computed for
+    private int[] changeSlots = new int[16];
+    private byte[] changeTargets = new byte[16];
+    private int changeCount;
+
+    /**
+     * Vehicles ignore traffic signals.
+     */
+    public CarFollowingModel() {
+        this(new SignalPlan());
+    }
+
+    /**
+     * Vehicles stop at the lines of the given plan while their signal is red or yellow.
+     */
+    public CarFollowingModel(SignalPlan signals) {
+        this.signals = signals;
+    }
+
+    @Override
+    public void step(VehicleStore store) {
+        boolean newStore = index == null || index.getStore() != store;
+        if (newStore) {
+            index = new LaneIndex(store);
+        } else {
+            index.repair();
+        }
+        if (newStore || linesForStore != store.modCount || linesForPlan != signals.getModCount()) {
+            findNextLines(store);
+        }
+        changeLanes(store, -1);
+        changeLanes(store, 1);
+
+        final double dt = store.getTimeInterval();
+        final double[] pos = store.position;
+        final double[] vel = store.velocity;
+        final int[] moves = store.moveCount;
+        final int[] line = nextLine;
+        final int lines = signals.size();
+        int secondMoves = 0;
+        for (int l = 0; l < index.getNumLanes(); l++) {
+            int leader = -1;
+            int k = index.laneSize(l) - 1;
+            while (k >= 0) {
+                int i = index.vehicleAt(l, k--);
+                double p = pos[i];
+                double target = p + vel[i] * dt;
+                if (leader >= 0 && target > pos[leader] - MIN_GAP) {
+                    target = pos[leader] - MIN_GAP;
+                }
+                int c = line[i];
+                while (c < lines && signals.getPosition(c) < target) {
+                    if (mustStop(signals.getPosition(c) - p, signals.getSignal(c))) {
+                        target = signals.getPosition(c);
+                        break;
+                    }
+                    c++;
+                }
+                if (++moves[i] == 2) {
+                    secondMoves++;
+                }
+                leader = i;
+                if (target > p) {
+                    pos[i] = target;
+                    line[i] = c;
+                    continue;
+                }
+                // held up: every vehicle packed in behind stays where it is too
+                while (k >= 0) {
+                    int f = index.vehicleAt(l, k);
+                    if (pos[f] < pos[leader] - MIN_GAP) {
+                        break;
+                    }
+                    if (++moves[f] == 2) {
+                        secondMoves++;
+                    }
+                    leader = f;
+                    k--;
+                }
+            }
+        }
+        // report in slot order, like the default movement
+        for (int i = 0, n = store.size(); secondMoves > 0 && i < n; i++) {
+            if (moves[i] == 2) {
+                store.showTrafficState(i);
+                secondMoves--;
+            }
+        }
+    }
+
+    public SignalPlan getSignals() {
+        return signals;
+    }
+
+    /**
+     * Index the last step ran on, or null before the first step.
+     */
+    public LaneIndex getIndex() {
+        return index;
+    }
+
+    // Red always stops a vehicle; yellow only if it is far enough from the line to stop in time
+    private static boolean mustStop(double distance, TrafficSignal ts) {
+        return ts.isRed() || (ts.isYellow() && distance >= MIN_GAP);
+    }
+
+    private void findNextLines(VehicleStore store) {
+        int n = store.size();
+        if (nextLine.length < n) {
+            nextLine = new int[Math.max(n, nextLine.length + (nextLine.length >> 1))];
+        }
+        for (int i = 0; i < n; i++) {
+            nextLine[i] = signals.nextAt(store.position[i]);
+        }
+        linesForStore = store.modCount;
+        linesForPlan = signals.getModCount();
+    }
+
+    // Decides and applies every lane change in one direction (-1 towards lane 1, 1 away from it)
+    private void changeLanes(VehicleStore store, int direction) {
+        final double dt = store.getTimeInterval();
+        final double[] pos = store.position;
+        final double[] vel = store.velocity;
+        final int laneCount = index.getNumLanes();
+        changeCount = 0;
+        for (int l = 0; l < laneCount; l++) {
+            int target = l + direction;
+            if (target < 0 || target >= laneCount) {
+                continue;
+            }
+            double lastArrival = Double.POSITIVE_INFINITY; // position of the last vehicle accepted into target
+            for (int k = index.laneSize(l) - 1; k >= 0; k--) {
+                int i = index.vehicleAt(l, k);
+                double p = pos[i];
+                double gap = index.gapAhead(i);
+                if (gap >= vel[i] * dt + MIN_GAP) {
+                    continue;
+                }
+                double ahead = Math.min(index.gapAheadIn(target, p), lastArrival - p);
+                if (ahead <= gap || ahead < MIN_GAP) {
+                    continue;
+                }
+                int follower = index.followerAt(target, p);
+                if (follower >= 0 && p - pos[follower] < vel[follower] * dt + MIN_GAP) {
+                    continue;
+                }
+                addChange(i, target);
+                lastArrival = p;
+            }
+        }
+        index.moveToLanes(changeSlots, changeTargets, changeCount);
+    }
+
+    private void addChange(int slot, int target) {
+        if (changeCount == changeSlots.length) {
+            changeSlots = Arrays.copyOf(changeSlots, changeCount * 2);
+            changeTargets = Arrays.copyOf(changeTargets, changeCount * 2);
+        }
+        changeSlots[changeCount] = slot;
+        changeTargets[changeCount] = (byte) target;
+        changeCount++;
+    }
+}
@@ -0,0 +1,306 @@
+package vehicle;
+
+import java.util.Arrays;
+
+/**
+ * Spawns and retires the vehicles of a store in constant time, for fleets with vehicles
+ * entering and leaving all the time.
+ *
+ * Callers hold vehicles by handle, a long made of an index into a handle table and that
+ * entry's generation. Retiring a vehicle bumps the generation and puts the entry on a
+ * free list for the next spawn, so a handle kept past its vehicle's end is recognised as
+ * stale instead of silently naming whichever vehicle took its place. The store itself
+ * stays dense: a retired vehicle's slot is filled by the last vehicle, so the column
+ * sweeps never meet a hole and freed slots are reused by the next spawn without the
+ * columns being copied or grown. A hash index maps each vehicle ID to its handle.
+ *
+ * Once a store is managed, vehicles must only be added and removed through the manager;
+ * doing it on the store directly is detected on the next call. Not thread-safe.
+ */
+public class FleetManager {
+
+    /**
+     * Returned where there is no vehicle to give a handle for.
+     */
+    public static final long NO_VEHICLE = -1L;
+
+    private static final int MIN_TABLE = 16;
+
+    private final VehicleStore store;
+    private int expectedModCount;
+
+    // Handle table: per entry the slot it points at and its generation; free entries are chained through slotOf
+    private int[] slotOf;
+    private int[] generation;
+    private int freeHead = -1;
+    private int entries; // entries ever used, free or not
+    private int[] handleOf; // per slot: the handle table entry pointing at it
+
+    // ID index: open addressing with linear probing, IDs mapped to handle table entries
+    private String[] keys;
+    private int[] values;
+
+    /**
+     * Manages the given store, taking over the vehicles already in it.
+     * @throws IllegalArgumentException if two of them share an ID.
+     */
+    public FleetManager(VehicleStore store) {
+        this.store = store;
+        int n = store.size();
+        int capacity = Math.max(MIN_TABLE, n);
+        slotOf = new int[capacity];
+        generation = new int[capacity];
+        handleOf = new int[capacity];
+        int table = MIN_TABLE;
+        while (table < 2 * capacity) {
+            table <<= 1;
+        }
+        keys = new String[table];
+        values = new int[table];
+        for (int slot = 0; slot < n; slot++) {
+            int entry = newEntry(slot);
+            if (!insertKey(store.getVehicleID(slot), entry)) {
+                throw new IllegalArgumentException("Duplicate vehicle ID \"" + store.getVehicleID(slot) + "\"");
+            }
+        }
+        expectedModCount = store.modCount;
+    }
+
+    /**
+     * Adds a vehicle of the given type at the start of the road.
+     * @return its handle.
+     * @throws IllegalArgumentException if a vehicle with that ID is already in the fleet.
+     */
+    public long spawn(byte type, String vehicleID) {
+        checkStore();
+        if (indexOf(vehicleID) >= 0) {
+            throw new IllegalArgumentException("Duplicate vehicle ID \"" + vehicleID + "\"");
+        }
+        int slot = store.add(type, vehicleID);
+        int entry = newEntry(slot);
+        insertKey(vehicleID, entry);
+        expectedModCount = store.modCount;
+        return handle(entry);
+    }
+
+    /**
+     * Retires the vehicle a handle names.
+     * @return false if the handle is stale, i.e. its vehicle was already retired.
+     */
+    public boolean despawn(long handle) {
+        checkStore();
+        int entry = entryOf(handle);
+        if (entry < 0) {
+            return false;
+        }
+        retire(entry);
+        return true;
+    }
+
+    /**
+     * Retires the vehicle with the given ID.
+     * @return false if there is none.
+     */
+    public boolean despawn(String vehicleID) {
+        checkStore();
+        int i = indexOf(vehicleID);
+        if (i < 0) {
+            return false;
+        }
+        retire(values[i]);
+        return true;
+    }
+
+    /**
+     * Retires every vehicle at or beyond the given road position, e.g. at the end of a
+     * road, in one pass over the positions.
+     * @return the number of vehicles retired.
+     */
+    public int retireFrom(double position) {
+        checkStore();
+        int retired = 0;
+        // back to front, so the vehicle moved into a freed slot has already been looked at
+        for (int slot = store.size() - 1; slot >= 0; slot--) {
+            if (store.position[slot] >= position) {
+                retire(handleOf[slot]);
+                retired++;
+            }
+        }
+        return retired;
+    }
+
+    /**
+     * Handle of the vehicle with the given ID, or NO_VEHICLE.
+     */
+    public long find(String vehicleID) {
+        checkStore();
+        int i = indexOf(vehicleID);
+        return i < 0 ? NO_VEHICLE : handle(values[i]);
+    }
+
+    /**
+     * Slot the handle's vehicle is in now, or -1 if the handle is stale. Slots change
+     * when other vehicles are retired, so look them up again rather than keeping them.
+     */
+    public int slotOf(long handle) {
+        checkStore();
+        int entry = entryOf(handle);
+        return entry < 0 ? -1 : slotOf[entry];
+    }
+
+    public boolean isAlive(long handle) {
+        return slotOf(handle) >= 0;
+    }
+
+    /**
+     * Handle of the vehicle in the given slot.
+     */
+    public long handleAt(int slot) {
+        checkStore();
+        if (slot < 0 || slot >= store.size()) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " out of range, size " + store.size());
+        }
+        return handle(handleOf[slot]);
+    }
+
+    /**
+     * A Car, Bus or Truck handle onto the vehicle, or null if the handle is stale.
+     * The object follows its vehicle from slot to slot, and fails once it is retired.
+     */
+    public Vehicle view(long handle) {
+        int slot = slotOf(handle);
+        return slot < 0 ? null : store.view(slot);
+    }
+
+    public VehicleStore getStore() {
+        return store;
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    private void retire(int entry) {
+        int slot = slotOf[entry];
+        removeKey(store.getVehicleID(slot));
+        int moved = store.swapRemove(slot);
+        if (moved >= 0) {
+            int movedEntry = handleOf[moved];
+            handleOf[slot] = movedEntry;
+            slotOf[movedEntry] = slot;
+        }
+        generation[entry] = (generation[entry] + 1) & Integer.MAX_VALUE; // handles stay non-negative
+        slotOf[entry] = freeHead;
+        freeHead = entry;
+        expectedModCount = store.modCount;
+    }
+
+    // Takes an entry off the free list, or a fresh one, and points it at the slot
+    private int newEntry(int slot) {
+        int entry;
+        if (freeHead >= 0) {
+            entry = freeHead;
+            freeHead = slotOf[entry];
+        } else {
+            if (entries == slotOf.length) {
+                slotOf = Arrays.copyOf(slotOf, entries * 2);
+                generation = Arrays.copyOf(generation, entries * 2);
+            }
+            entry = entries++;
+        }
+        slotOf[entry] = slot;
+        if (slot >= handleOf.length) {
+            handleOf = Arrays.copyOf(handleOf, Math.max(slot + 1, handleOf.length * 2));
+        }
+        handleOf[slot] = entry;
+        return entry;
+    }
+
+    private long handle(int entry) {
+        return (long) generation[entry] << 32 | entry;
+    }
+
+    // Entry a handle names if it is still current, otherwise -1
+    private int entryOf(long handle) {
+        if (handle < 0) {
+            return -1;
+        }
+        int entry = (int) handle;
+        if (entry >= entries || generation[entry] != (int) (handle >>> 32)) {
+            return -1;
+        }
+        return entry;
+    }
+
+    private void checkStore() {
+        if (store.modCount != expectedModCount) {
+            throw new IllegalStateException("Vehicles were added to or removed from the store behind its FleetManager");
+        }
+    }
+
+    private int indexOf(String key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Returns false if the key is already present
+    private boolean insertKey(String key, int entry) {
+        if (2 * (store.size() + 1) > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(key)) {
+                return false;
+            }
+        }
+        keys[i] = key;
+        values[i] = entry;
+        return true;
+    }
+
+    // Deletes by shifting later members of the probe run back, so no tombstones build up under churn
+    private void removeKey(String key) {
+        int mask = keys.length - 1;
+        int hole = indexOf(key);
+        for (int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            // move keys[i] into the hole unless its home lies cyclically in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = hash(oldKeys[j]) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
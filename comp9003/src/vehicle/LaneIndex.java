@@ -0,0 +1,311 @@
+package vehicle;
+
+import java.util.Arrays;
+
+/**
+ * The vehicles of a store grouped by lane and ordered by position.
+ * Each lane is an array of slots sorted from the back of the road to the front, and each
+ * slot remembers where it sits in its lane, so a vehicle's leader and follower are found
+ * in O(1) and the vehicles around any point of a lane by binary search.
+ * Vehicles at the same position are ordered by slot, the lower slot in front.
+ *
+ * Positions only change a little between ticks and vehicles rarely pass each other
+ * within a lane, so repair() restores the order with an insertion sort that costs one
+ * pass when nothing has moved out of place.
+ */
+public class LaneIndex {
+
+    private static final int DEFAULT_LANE_CAPACITY = 16;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private final VehicleStore store;
+    private final int[][] lanes = new int[VehicleStore.LANES.length][];
+    private final int[] laneSize = new int[VehicleStore.LANES.length];
+    private int[] rank = new int[0]; // per slot: its position within its lane array
+    private int[] grouped = new int[0]; // lane changes grouped by target lane
+    private int[] tmp = new int[0]; // merge sort buffer
+    private int builtFor = -1; // store modCount the index was built for
+
+    public LaneIndex(VehicleStore store) {
+        this.store = store;
+        rebuild();
+    }
+
+    public VehicleStore getStore() {
+        return store;
+    }
+
+    /**
+     * Sorts every lane from scratch, in O(n log n).
+     */
+    public void rebuild() {
+        int n = store.size();
+        byte[] laneOf = store.laneIndex;
+        int[] counts = new int[lanes.length];
+        for (int i = 0; i < n; i++) {
+            counts[laneOf[i]]++;
+        }
+        for (int l = 0; l < lanes.length; l++) {
+            if (lanes[l] == null || lanes[l].length < counts[l]) {
+                lanes[l] = new int[Math.max(DEFAULT_LANE_CAPACITY, counts[l])];
+            }
+            laneSize[l] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            int l = laneOf[i];
+            lanes[l][laneSize[l]++] = i;
+        }
+        if (rank.length < n) {
+            rank = new int[n];
+        }
+        for (int l = 0; l < lanes.length; l++) {
+            sort(lanes[l], 0, laneSize[l]);
+            renumber(l);
+        }
+        builtFor = store.modCount;
+    }
+
+    /**
+     * Brings the index up to date after vehicles have moved.
+     * Costs O(n) plus one shift per pair of vehicles that swapped places since the last
+     * call; falls back to rebuild() if vehicles were added or removed, or changed lane
+     * without going through moveToLanes.
+     */
+    public void repair() {
+        if (builtFor != store.modCount) {
+            rebuild();
+            return;
+        }
+        byte[] laneOf = store.laneIndex;
+        for (int l = 0; l < lanes.length; l++) {
+            int[] lane = lanes[l];
+            for (int j = 0, n = laneSize[l]; j < n; j++) {
+                if (laneOf[lane[j]] != l) {
+                    rebuild();
+                    return;
+                }
+            }
+        }
+        for (int l = 0; l < lanes.length; l++) {
+            int[] lane = lanes[l];
+            for (int j = 1, n = laneSize[l]; j < n; j++) {
+                int s = lane[j];
+                if (!behind(s, lane[j - 1])) {
+                    continue;
+                }
+                int k = j;
+                do {
+                    lane[k] = lane[k - 1];
+                    rank[lane[k]] = k;
+                    k--;
+                } while (k > 0 && behind(s, lane[k - 1]));
+                lane[k] = s;
+                rank[s] = k;
+            }
+        }
+    }
+
+    /**
+     * Moves vehicles to other lanes and re-sorts the lanes involved, in O(n + k log k)
+     * for k changes. The lanes are indexes into the store's lane table (0 for lane 1).
+     */
+    public void moveToLanes(int[] slots, byte[] targets, int count) {
+        if (count == 0) {
+            return;
+        }
+        byte[] laneOf = store.laneIndex;
+        int[] start = new int[lanes.length + 1];
+        for (int c = 0; c < count; c++) {
+            start[targets[c] + 1]++;
+        }
+        for (int l = 0; l < lanes.length; l++) {
+            start[l + 1] += start[l];
+        }
+        if (grouped.length < count) {
+            grouped = new int[count];
+        }
+        // counting sort by target lane; a vehicle already in its target lane stays where it is
+        int[] next = start.clone();
+        for (int c = 0; c < count; c++) {
+            int target = targets[c];
+            if (laneOf[slots[c]] != target) {
+                laneOf[slots[c]] = (byte) target;
+                grouped[next[target]++] = slots[c];
+            }
+        }
+
+        for (int l = 0; l < lanes.length; l++) {
+            int[] lane = lanes[l];
+            int n = laneSize[l];
+            int kept = 0;
+            for (int j = 0; j < n; j++) {
+                int s = lane[j];
+                if (laneOf[s] == l) {
+                    lane[kept++] = s;
+                }
+            }
+            int added = next[l] - start[l];
+            if (added > 0) {
+                sort(grouped, start[l], next[l]);
+                if (lane.length < kept + added) {
+                    lane = lanes[l] = Arrays.copyOf(lane, Math.max(kept + added, lane.length + (lane.length >> 1)));
+                }
+                // merge from the back so the kept vehicles never get overwritten
+                int i = kept - 1;
+                int a = next[l] - 1;
+                int w = kept + added - 1;
+                while (a >= start[l]) {
+                    if (i >= 0 && behind(grouped[a], lane[i])) {
+                        lane[w--] = lane[i--];
+                    } else {
+                        lane[w--] = grouped[a--];
+                    }
+                }
+            }
+            laneSize[l] = kept + added;
+            if (kept != n || added > 0) {
+                renumber(l);
+            }
+        }
+    }
+
+    /**
+     * Vehicle directly in front of the given one in its lane, or -1 if it leads the lane.
+     */
+    public int leader(int slot) {
+        int l = store.laneIndex[slot];
+        int r = rank[slot] + 1;
+        return r < laneSize[l] ? lanes[l][r] : -1;
+    }
+
+    /**
+     * Vehicle directly behind the given one in its lane, or -1 if it is last.
+     */
+    public int follower(int slot) {
+        int r = rank[slot] - 1;
+        return r >= 0 ? lanes[store.laneIndex[slot]][r] : -1;
+    }
+
+    /**
+     * Distance to the leader, or positive infinity if the lane is clear ahead.
+     */
+    public double gapAhead(int slot) {
+        int leader = leader(slot);
+        return leader < 0 ? Double.POSITIVE_INFINITY : store.position[leader] - store.position[slot];
+    }
+
+    /**
+     * First vehicle in the lane at or beyond the given position, or -1 if there is none.
+     */
+    public int leaderAt(int lane, double position) {
+        int j = lowerBound(lane, position);
+        return j < laneSize[lane] ? lanes[lane][j] : -1;
+    }
+
+    /**
+     * Last vehicle in the lane before the given position, or -1 if there is none.
+     */
+    public int followerAt(int lane, double position) {
+        int j = lowerBound(lane, position);
+        return j > 0 ? lanes[lane][j - 1] : -1;
+    }
+
+    /**
+     * Free road in the lane from the given position to the next vehicle, or positive infinity.
+     */
+    public double gapAheadIn(int lane, double position) {
+        int leader = leaderAt(lane, position);
+        return leader < 0 ? Double.POSITIVE_INFINITY : store.position[leader] - position;
+    }
+
+    /**
+     * Free road in the lane from the previous vehicle to the given position, or positive infinity.
+     */
+    public double gapBehindIn(int lane, double position) {
+        int follower = followerAt(lane, position);
+        return follower < 0 ? Double.POSITIVE_INFINITY : position - store.position[follower];
+    }
+
+    public int getNumLanes() {
+        return lanes.length;
+    }
+
+    public int laneSize(int lane) {
+        return laneSize[lane];
+    }
+
+    /**
+     * The k-th vehicle of a lane counting from the back, for k in [0, laneSize(lane)).
+     */
+    public int vehicleAt(int lane, int k) {
+        if (k < 0 || k >= laneSize[lane]) {
+            throw new IndexOutOfBoundsException("Position " + k + " out of range, lane size " + laneSize[lane]);
+        }
+        return lanes[lane][k];
+    }
+
+    private int lowerBound(int lane, double position) {
+        int[] a = lanes[lane];
+        double[] pos = store.position;
+        int lo = 0;
+        int hi = laneSize[lane];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (pos[a[mid]] < position) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void renumber(int l) {
+        int[] lane = lanes[l];
+        for (int j = 0, n = laneSize[l]; j < n; j++) {
+            rank[lane[j]] = j;
+        }
+    }
+
+    // True if vehicle a is behind vehicle b
+    private boolean behind(int a, int b) {
+        double pa = store.position[a];
+        double pb = store.position[b];
+        return pa < pb || (pa == pb && a > b);
+    }
+
+    private void sort(int[] a, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int j = from + 1; j < to; j++) {
+                int s = a[j];
+                int k = j;
+                while (k > from && behind(s, a[k - 1])) {
+                    a[k] = a[k - 1];
+                    k--;
+                }
+                a[k] = s;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(a, from, mid);
+        sort(a, mid, to);
+        if (!behind(a[mid], a[mid - 1])) {
+            return;
+        }
+        if (tmp.length < mid - from) {
+            tmp = new int[Math.max(mid - from, tmp.length * 2)];
+        }
+        System.arraycopy(a, from, tmp, 0, mid - from);
+        int i = 0;
+        int iEnd = mid - from;
+        int j = mid;
+        int w = from;
+        while (i < iEnd && j < to) {
+            a[w++] = behind(a[j], tmp[i]) ? a[j++] : tmp[i++];
+        }
+        while (i < iEnd) {
+            a[w++] = tmp[i++];
+        }
+    }
+}
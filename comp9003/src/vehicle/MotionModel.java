@@ -0,0 +1,15 @@
+package vehicle;
+
+/**
+ * Decides how a fleet moves during one time interval.
+ * VehicleStore.advance() hands the whole store to its model, so a model can look at
+ * every vehicle before moving any of them.
+ */
+public interface MotionModel {
+
+    /**
+     * Moves every vehicle in the store by one time interval, counting the move and
+     * reporting each vehicle's state on its second move, as the default movement does.
+     */
+    void step(VehicleStore store);
+}
@@ -1,12 +1,27 @@
 package vehicle;
 
 public class Truck extends Vehicle {
+    static final double SPEED = 90.0;
+
     public Truck(String vehicleID) {
         super(vehicleID);
     }
 
+    public Truck(VehicleStore store, String vehicleID) {
+        super(store, vehicleID);
+    }
+
+    Truck(VehicleStore store, int slot) {
+        super(store, slot);
+    }
+
     @Override
     protected double getSpeed() {
-        return 90.0;
+        return SPEED;
+    }
+
+    @Override
+    protected byte getTypeCode() {
+        return VehicleStore.TYPE_TRUCK;
     }
 }
\ No newline at end of file
@@ -2,64 +2,108 @@ package vehicle;
 
 import exception.SimulationException;
 
+/**
+ * A handle onto one slot of a VehicleStore.
+ * The vehicle's state lives in the store's columns; this object only knows where.
+ */
 public abstract class Vehicle {
-    private String vehicleID;
-    private double velocity;
-    protected double currentPosition = 0.0;
-    private final int[] lanes = {1, 2, 3};
-    private int currentLane = 0;
-    protected double timeInterval = 5.0;
-    private int moveCount = 0;
+    private final VehicleStore store;
+    int slot; // kept up to date by the store, -1 once the vehicle is removed
 
+    /**
+     * Creates a vehicle in a store of its own.
+     */
     public Vehicle(String vehicleID) {
-        this.vehicleID = vehicleID;
-        this.velocity = calculateVelocity();
+        this(new VehicleStore(1), vehicleID);
+    }
+
+    /**
+     * Appends a new vehicle to the given store and binds this handle to it.
+     */
+    public Vehicle(VehicleStore store, String vehicleID) {
+        this.store = store;
+        this.slot = store.add(getTypeCode(), vehicleID, getSpeed());
+        store.bind(slot, this);
+    }
+
+    // Wraps a vehicle that already exists in the store
+    Vehicle(VehicleStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+        store.bind(slot, this);
     }
 
     // Subclasses must provide their speed (units per interval)
     protected abstract double getSpeed();
 
+    // Subclasses must provide their VehicleStore type code
+    protected abstract byte getTypeCode();
+
     public double calculateVelocity() {
         // velocity = speed per time interval
-        this.velocity = getSpeed() / timeInterval;
-        return this.velocity;
+        double velocity = getSpeed() / store.getTimeInterval();
+        store.setVelocity(slot(), velocity);
+        return velocity;
     }
 
     public void move() throws SimulationException {
-        moveCount++;
-        calculateVelocity();
-        currentPosition += velocity * timeInterval;
-        // Display state on second move
-        if (moveCount == 2) {
-            showTrafficState();
+        int s = slot();
+        store.advance(s, s + 1);
+    }
+
+    /**
+     * Same as calling move() the given number of times, in constant time; the position
+     * matches stepping up to floating-point rounding.
+     */
+    public void fastForward(long steps) {
+        int s = slot();
+        store.fastForward(s, s + 1, steps);
+    }
+
+    /**
+     * Moves the vehicle on until it has made the given number of moves.
+     */
+    public void advanceTo(long moveNumber) {
+        int done = store.getMoveCount(slot());
+        if (moveNumber < done) {
+            throw new IllegalArgumentException("Vehicle has already made " + done + " moves, cannot go back to " + moveNumber);
         }
-        changeLane();
+        fastForward(moveNumber - done);
     }
 
     public void changeLane() {
         // cycle through lanes
-        currentLane = (currentLane + 1) % lanes.length;
+        store.advanceLane(slot());
     }
 
     public void showTrafficState() {
-        System.out.printf(
-                "Vehicle %s: lane %d, current position %.2f, velocity %.2f\n",
-                vehicleID,
-                lanes[currentLane],
-                currentPosition,
-                velocity
-        );
+        store.showTrafficState(slot());
     }
 
     public String getVehicleID() {
-        return vehicleID;
+        return store.getVehicleID(slot());
     }
 
     public int getCurrentLane() {
-        return lanes[currentLane];
+        return store.getCurrentLane(slot());
     }
 
     public double getCurrentPosition() {
-        return currentPosition;
+        return store.getCurrentPosition(slot());
+    }
+
+    public VehicleStore getStore() {
+        return store;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    private int slot() {
+        if (slot < 0) {
+            throw new IllegalStateException("Vehicle has been removed from its store");
+        }
+        return slot;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,600 @@
+package vehicle;
+
+import java.io.IOException;
+import java.util.Arrays;
+import checkpoint.SnapshotInput;
+import checkpoint.SnapshotOutput;
+import report.SimulationReporter;
+
+/**
+ * Column-oriented storage for a whole fleet of vehicles.
+ * Every attribute lives in its own primitive array indexed by slot, so one tick over
+ * the fleet is a sweep over a handful of arrays instead of a walk over heap objects.
+ * Car, Bus and Truck objects are only handles onto a slot of a store.
+ */
+public class VehicleStore {
+
+    // Type codes kept in the typeCode column
+    public static final byte TYPE_CAR = 0;
+    public static final byte TYPE_BUS = 1;
+    public static final byte TYPE_TRUCK = 2;
+
+    // Lane numbers shown to the user; the laneIndex column holds an index into this table
+    static final int[] LANES = {1, 2, 3};
+    private static final byte[] NEXT_LANE = Kinematics.nextLanes(LANES.length);
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final double DEFAULT_TIME_INTERVAL = 5.0;
+
+    private final double timeInterval;
+    private final double[] typeVelocity; // velocity of each type for timeInterval, worked out once
+    private int size;
+    private String[] ids;
+    // Columns read directly by the motion models in this package
+    double[] position;
+    double[] velocity;
+    byte[] laneIndex;
+    int[] moveCount;
+    private byte[] typeCode;
+    private Vehicle[] views; // handles bound to a slot, only allocated once a handle exists
+    private SimulationReporter reporter = SimulationReporter.console();
+    private MotionModel motionModel; // null for the default free-flow movement
+    int modCount; // bumped whenever slots are added or removed
+    private boolean sharedColumns; // ids, velocity and typeCode are shared with a fork and must be copied before writing
+
+    public VehicleStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity number of vehicles the store can hold before it has to grow.
+     */
+    public VehicleStore(int initialCapacity) {
+        this(initialCapacity, DEFAULT_TIME_INTERVAL);
+    }
+
+    /**
+     * @param initialCapacity number of vehicles the store can hold before it has to grow.
+     * @param timeInterval length of one simulation step in seconds.
+     */
+    public VehicleStore(int initialCapacity, double timeInterval) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative: " + initialCapacity);
+        }
+        if (timeInterval <= 0) {
+            throw new IllegalArgumentException("Time interval must be positive: " + timeInterval);
+        }
+        this.timeInterval = timeInterval;
+        this.typeVelocity = Kinematics.typeVelocities(timeInterval);
+        this.ids = new String[initialCapacity];
+        this.position = new double[initialCapacity];
+        this.velocity = new double[initialCapacity];
+        this.laneIndex = new byte[initialCapacity];
+        this.moveCount = new int[initialCapacity];
+        this.typeCode = new byte[initialCapacity];
+    }
+
+    /**
+     * Speed (units per interval) of the given vehicle type.
+     */
+    public static double speedOf(byte type) {
+        switch (type) {
+            case TYPE_CAR:
+                return Car.SPEED;
+            case TYPE_BUS:
+                return Bus.SPEED;
+            case TYPE_TRUCK:
+                return Truck.SPEED;
+            default:
+                throw new IllegalArgumentException("Unknown vehicle type code: " + type);
+        }
+    }
+
+    /**
+     * Appends a vehicle without creating a handle for it.
+     * @return the slot the vehicle was stored in.
+     */
+    public int add(byte type, String vehicleID) {
+        speedOf(type); // rejects unknown type codes
+        return append(type, vehicleID, typeVelocity[type]);
+    }
+
+    int add(byte type, String vehicleID, double speed) {
+        return append(type, vehicleID, speed / timeInterval);
+    }
+
+    private int append(byte type, String vehicleID, double velocity) {
+        ownColumns();
+        ensureCapacity(size + 1);
+        int slot = size++;
+        ids[slot] = vehicleID;
+        position[slot] = 0.0;
+        this.velocity[slot] = velocity;
+        laneIndex[slot] = 0;
+        moveCount[slot] = 0;
+        typeCode[slot] = type;
+        modCount++;
+        return slot;
+    }
+
+    /**
+     * Removes the vehicle in the given slot. Later vehicles shift down by one so
+     * the fleet keeps its insertion order; their handles follow them.
+     */
+    public void remove(int slot) {
+        checkSlot(slot);
+        ownColumns();
+        int tail = size - slot - 1;
+        if (views != null && views[slot] != null) {
+            views[slot].slot = -1;
+        }
+        System.arraycopy(ids, slot + 1, ids, slot, tail);
+        System.arraycopy(position, slot + 1, position, slot, tail);
+        System.arraycopy(velocity, slot + 1, velocity, slot, tail);
+        System.arraycopy(laneIndex, slot + 1, laneIndex, slot, tail);
+        System.arraycopy(moveCount, slot + 1, moveCount, slot, tail);
+        System.arraycopy(typeCode, slot + 1, typeCode, slot, tail);
+        if (views != null) {
+            System.arraycopy(views, slot + 1, views, slot, tail);
+            for (int i = slot; i < size - 1; i++) {
+                if (views[i] != null) views[i].slot = i;
+            }
+            views[size - 1] = null;
+        }
+        size--;
+        ids[size] = null;
+        modCount++;
+    }
+
+    /**
+     * Removes the vehicle in the given slot in constant time by moving the last vehicle
+     * into it, so the fleet does not keep its insertion order. The moved vehicle's handle
+     * follows it.
+     * @return the slot the moved vehicle came from, or -1 if the removed one was last.
+     */
+    public int swapRemove(int slot) {
+        checkSlot(slot);
+        ownColumns();
+        int last = size - 1;
+        if (views != null && views[slot] != null) {
+            views[slot].slot = -1;
+        }
+        if (slot != last) {
+            ids[slot] = ids[last];
+            position[slot] = position[last];
+            velocity[slot] = velocity[last];
+            laneIndex[slot] = laneIndex[last];
+            moveCount[slot] = moveCount[last];
+            typeCode[slot] = typeCode[last];
+            if (views != null) {
+                views[slot] = views[last];
+                if (views[slot] != null) views[slot].slot = slot;
+            }
+        }
+        if (views != null) {
+            views[last] = null;
+        }
+        ids[last] = null;
+        size = last;
+        modCount++;
+        return slot != last ? last : -1;
+    }
+
+    /**
+     * Removes the vehicles in the given slots, which must be in ascending order, in one
+     * pass over the columns. The remaining vehicles keep their order, as with remove.
+     */
+    public void removeAll(int[] slots, int count) {
+        if (count == 0) {
+            return;
+        }
+        for (int k = 0; k < count; k++) {
+            if (slots[k] < 0 || slots[k] >= size || (k > 0 && slots[k] <= slots[k - 1])) {
+                throw new IllegalArgumentException("Slots must be ascending and in range, size " + size);
+            }
+        }
+        ownColumns();
+        int next = 0;
+        int kept = slots[0];
+        for (int i = slots[0]; i < size; i++) {
+            if (next < count && slots[next] == i) {
+                if (views != null && views[i] != null) {
+                    views[i].slot = -1;
+                }
+                next++;
+                continue;
+            }
+            ids[kept] = ids[i];
+            position[kept] = position[i];
+            velocity[kept] = velocity[i];
+            laneIndex[kept] = laneIndex[i];
+            moveCount[kept] = moveCount[i];
+            typeCode[kept] = typeCode[i];
+            if (views != null) {
+                views[kept] = views[i];
+                if (views[kept] != null) views[kept].slot = kept;
+            }
+            kept++;
+        }
+        for (int i = kept; i < size; i++) {
+            ids[i] = null;
+            if (views != null) views[i] = null;
+        }
+        size = kept;
+        modCount++;
+    }
+
+    /**
+     * Appends a vehicle with the state another store gave it, e.g. one handed over from
+     * another part of the road. The lane is the number getCurrentLane reports.
+     * @return the slot the vehicle was stored in.
+     */
+    public int restore(byte type, String vehicleID, double position, double velocity, int lane, int moveCount) {
+        speedOf(type);
+        int index = Arrays.binarySearch(LANES, lane);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown lane: " + lane);
+        }
+        int slot = append(type, vehicleID, velocity);
+        this.position[slot] = position;
+        this.laneIndex[slot] = (byte) index;
+        this.moveCount[slot] = moveCount;
+        return slot;
+    }
+
+    /**
+     * Returns the handle for a slot, creating one if none exists yet.
+     */
+    public Vehicle view(int slot) {
+        checkSlot(slot);
+        if (views != null && views[slot] != null) {
+            return views[slot];
+        }
+        switch (typeCode[slot]) {
+            case TYPE_BUS:
+                return new Bus(this, slot);
+            case TYPE_TRUCK:
+                return new Truck(this, slot);
+            default:
+                return new Car(this, slot);
+        }
+    }
+
+    void bind(int slot, Vehicle handle) {
+        if (views == null) {
+            views = new Vehicle[ids.length];
+        }
+        views[slot] = handle;
+    }
+
+    /**
+     * Advances every vehicle by one time interval, using the motion model if one is set.
+     */
+    public void advance() {
+        if (motionModel != null) {
+            motionModel.step(this);
+        } else {
+            advance(0, size);
+        }
+    }
+
+    /**
+     * Advances the vehicles in slots [from, to) by one time interval.
+     * Position, move count and lane are updated in place, one column at a time;
+     * nothing is allocated except when a vehicle reports its state on its second move.
+     */
+    public void advance(int from, int to) {
+        if (advanceDeferred(from, to) > 0) {
+            reportSecondMoves(from, to);
+        }
+    }
+
+    /**
+     * Same as advance(from, to), but vehicles reaching their second move are only counted,
+     * not reported. Callers working on several ranges at once use this, then call
+     * reportSecondMoves on the ranges with a non-zero count, in slot order.
+     * @return the number of vehicles in the range that just made their second move.
+     */
+    public int advanceDeferred(int from, int to) {
+        Kinematics.advancePositions(position, velocity, timeInterval, from, to);
+        int secondMoves = Kinematics.countMoves(moveCount, from, to);
+        Kinematics.cycleLanes(laneIndex, NEXT_LANE, from, to);
+        return secondMoves;
+    }
+
+    /**
+     * Advances every vehicle by the given number of intervals at once.
+     * @see #fastForward(int, int, long)
+     */
+    public void fastForward(long steps) {
+        fastForward(0, size, steps);
+    }
+
+    /**
+     * Advances the vehicles in [from, to) by the given number of intervals in one pass,
+     * ending in the state advance(from, to) would reach after that many calls: the lane
+     * cycle is taken modulo the number of lanes and the position grows by velocity times
+     * the whole span. That product can differ from the sum stepping builds up in the last
+     * bit, so positions match stepping only up to floating-point rounding. Vehicles
+     * whose second move falls inside the span are reported with the state they would
+     * have had at that move, in the order stepping would report them.
+     * Only valid for the default movement; with a motion model, step instead.
+     */
+    public void fastForward(int from, int to, long steps) {
+        checkSteps(steps);
+        if (steps == 0) {
+            return;
+        }
+        reportSkippedMoves(from, to, 1);
+        if (steps >= 2) {
+            reportSkippedMoves(from, to, 0);
+        }
+        fastForwardUnreported(from, to, steps);
+    }
+
+    /**
+     * Same as fastForward(from, to, steps) for a range with nothing to report. A range
+     * with vehicles to report is left as it is; callers working on several ranges at
+     * once report those ranges together with reportFastForward, then advance each of
+     * them with fastForwardUnreported.
+     * @return the number of vehicles in the range to report; 0 if the range was advanced.
+     */
+    public int fastForwardDeferred(int from, int to, long steps) {
+        checkSteps(steps);
+        if (steps == 0) {
+            return 0;
+        }
+        int lowest = steps >= 2 ? 0 : 1; // lowest move count whose second move falls inside the span
+        int reports = 0;
+        for (int i = from; i < to; i++) {
+            if (moveCount[i] >= lowest && moveCount[i] <= 1) {
+                reports++;
+            }
+        }
+        if (reports == 0) {
+            fastForwardUnreported(from, to, steps);
+        }
+        return reports;
+    }
+
+    /**
+     * Reports what fastForward would report over the given ranges taken together, in
+     * the order it would: ranges holds from, to pairs in slot order, count of them.
+     */
+    public void reportFastForward(int[] ranges, int count, long steps) {
+        checkSteps(steps);
+        if (steps == 0) {
+            return;
+        }
+        for (int r = 0; r < count; r++) {
+            reportSkippedMoves(ranges[2 * r], ranges[2 * r + 1], 1);
+        }
+        if (steps >= 2) {
+            for (int r = 0; r < count; r++) {
+                reportSkippedMoves(ranges[2 * r], ranges[2 * r + 1], 0);
+            }
+        }
+    }
+
+    /**
+     * The state change of fastForward without its reports.
+     */
+    public void fastForwardUnreported(int from, int to, long steps) {
+        if (steps == 0) {
+            return;
+        }
+        Kinematics.advancePositions(position, velocity, timeInterval * steps, from, to);
+        Kinematics.addMoves(moveCount, steps, from, to);
+        Kinematics.cycleLanes(laneIndex, Kinematics.lanesAfter(LANES.length, steps), from, to);
+    }
+
+    // Reports the vehicles in [from, to) with the given move count as they will be at their second move
+    private void reportSkippedMoves(int from, int to, int moves) {
+        final double dt = timeInterval;
+        for (int i = from; i < to; i++) {
+            if (moveCount[i] == moves) {
+                if (moves == 1) {
+                    reporter.vehicleState(ids[i], LANES[laneIndex[i]], position[i] + velocity[i] * dt, velocity[i]);
+                } else {
+                    double first = position[i] + velocity[i] * dt;
+                    reporter.vehicleState(ids[i], LANES[NEXT_LANE[laneIndex[i]]], first + velocity[i] * dt, velocity[i]);
+                }
+            }
+        }
+    }
+
+    private static void checkSteps(long steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("Cannot fast-forward a negative number of steps: " + steps);
+        }
+    }
+
+    /**
+     * Reports the vehicles in [from, to) that just made their second move, exactly as
+     * advance would have reported them: with the lane they were in before changing lane.
+     */
+    public void reportSecondMoves(int from, int to) {
+        final int laneCount = LANES.length;
+        for (int i = from; i < to; i++) {
+            if (moveCount[i] == 2) {
+                int previous = laneIndex[i] == 0 ? laneCount - 1 : laneIndex[i] - 1;
+                reporter.vehicleState(ids[i], LANES[previous], position[i], velocity[i]);
+            }
+        }
+    }
+
+    public void showTrafficState(int slot) {
+        showTrafficState(slot, reporter);
+    }
+
+    /**
+     * Reports the vehicle's state to the given reporter instead of the store's.
+     */
+    public void showTrafficState(int slot, SimulationReporter to) {
+        to.vehicleState(ids[slot], LANES[laneIndex[slot]], position[slot], velocity[slot]);
+    }
+
+    /**
+     * Sets where vehicle states are reported; the console by default.
+     */
+    public void setReporter(SimulationReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    public SimulationReporter getReporter() {
+        return reporter;
+    }
+
+    /**
+     * Sets how advance() moves the fleet. With no model (the default) every vehicle drives
+     * at its own speed and changes lane on every move, regardless of the others.
+     */
+    public void setMotionModel(MotionModel motionModel) {
+        this.motionModel = motionModel;
+    }
+
+    public MotionModel getMotionModel() {
+        return motionModel;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getTimeInterval() {
+        return timeInterval;
+    }
+
+    public String getVehicleID(int slot) {
+        return ids[slot];
+    }
+
+    public double getCurrentPosition(int slot) {
+        return position[slot];
+    }
+
+    public double getVelocity(int slot) {
+        return velocity[slot];
+    }
+
+    public int getCurrentLane(int slot) {
+        return LANES[laneIndex[slot]];
+    }
+
+    public int getMoveCount(int slot) {
+        return moveCount[slot];
+    }
+
+    public byte getTypeCode(int slot) {
+        return typeCode[slot];
+    }
+
+    void setVelocity(int slot, double value) {
+        ownColumns();
+        velocity[slot] = value;
+    }
+
+    void advanceLane(int slot) {
+        int next = laneIndex[slot] + 1;
+        laneIndex[slot] = (byte) (next == LANES.length ? 0 : next);
+    }
+
+    /**
+     * Makes an independent copy of the fleet for another simulation, e.g. one scenario of a sweep.
+     * Positions, lanes and move counts change every step, so they are copied; IDs, velocities
+     * and types rarely change, so both stores share them until either one writes to them.
+     * The copy has no handles and no motion model, and reports to the same reporter.
+     */
+    public synchronized VehicleStore fork() {
+        VehicleStore copy = new VehicleStore(0, timeInterval);
+        copy.size = size;
+        copy.ids = ids;
+        copy.velocity = velocity;
+        copy.typeCode = typeCode;
+        copy.position = Arrays.copyOf(position, ids.length);
+        copy.laneIndex = Arrays.copyOf(laneIndex, ids.length);
+        copy.moveCount = Arrays.copyOf(moveCount, ids.length);
+        copy.reporter = reporter;
+        copy.sharedColumns = true;
+        sharedColumns = true;
+        return copy;
+    }
+
+    /**
+     * Writes the fleet to a checkpoint, one column at a time. Handles and the reporter are not saved.
+     */
+    public void writeSnapshot(SnapshotOutput out) throws IOException {
+        out.putDouble(timeInterval);
+        out.putInt(size);
+        out.putDoubles(position, 0, size);
+        out.putDoubles(velocity, 0, size);
+        out.putBytes(laneIndex, 0, size);
+        out.putInts(moveCount, 0, size);
+        out.putBytes(typeCode, 0, size);
+        for (int i = 0; i < size; i++) {
+            out.putString(ids[i]);
+        }
+    }
+
+    /**
+     * Rebuilds a fleet written by writeSnapshot.
+     */
+    public static VehicleStore readSnapshot(SnapshotInput in) throws IOException {
+        double timeInterval = in.getDouble();
+        int size = in.getInt();
+        if (size < 0 || timeInterval <= 0) {
+            throw new IOException("Corrupt vehicle snapshot: " + size + " vehicles, time interval " + timeInterval);
+        }
+        VehicleStore store = new VehicleStore(size, timeInterval);
+        in.getDoubles(store.position, 0, size);
+        in.getDoubles(store.velocity, 0, size);
+        in.getBytes(store.laneIndex, 0, size);
+        in.getInts(store.moveCount, 0, size);
+        in.getBytes(store.typeCode, 0, size);
+        for (int i = 0; i < size; i++) {
+            store.ids[i] = in.getString();
+        }
+        store.size = size;
+        return store;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " out of range, size " + size);
+        }
+    }
+
+    // Copy-on-write for the columns a fork may share
+    private synchronized void ownColumns() {
+        if (!sharedColumns) {
+            return;
+        }
+        ids = Arrays.copyOf(ids, ids.length);
+        velocity = Arrays.copyOf(velocity, velocity.length);
+        typeCode = Arrays.copyOf(typeCode, typeCode.length);
+        sharedColumns = false;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, Math.max(DEFAULT_CAPACITY, ids.length + (ids.length >> 1)));
+        if (newCapacity < 0) {
+            newCapacity = Integer.MAX_VALUE - 8;
+        }
+        ids = Arrays.copyOf(ids, newCapacity);
+        position = Arrays.copyOf(position, newCapacity);
+        velocity = Arrays.copyOf(velocity, newCapacity);
+        laneIndex = Arrays.copyOf(laneIndex, newCapacity);
+        moveCount = Arrays.copyOf(moveCount, newCapacity);
+        typeCode = Arrays.copyOf(typeCode, newCapacity);
+        if (views != null) {
+            views = Arrays.copyOf(views, newCapacity);
+        }
+    }
+}